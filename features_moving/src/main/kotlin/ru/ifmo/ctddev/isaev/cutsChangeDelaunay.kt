@@ -21,7 +21,6 @@ private val measures = arrayOf(SpearmanRankCorrelation(), VDM(), SymmetricUncert
 private const val cutSize = 50
 private val dataSet = KnownDatasets.ARIZONA5.read()
 private val evaluatedDs = evaluateDataSet(dataSet, measures)
-private val range = Array(evaluatedDs[0].size, { it })
 private const val MAX = 700.0
 
 fun main(args: Array<String>) {
@@ -35,7 +34,7 @@ fun main(args: Array<String>) {
     val pointCache = MapCache()
     val geomFact = GeometryFactory()
     do {
-        val isChanged = performDelaunayEnrichment(evaluatedDs, delaunay, pointCache, geomFact, range, subDiv, cutSize)
+        val isChanged = performDelaunayEnrichment(evaluatedDs, delaunay, pointCache, geomFact, subDiv, cutSize)
     } while (isChanged)
 
     val pointsToTry = pointCache.getAll()
@@ -60,6 +60,10 @@ public class Main {
 
     private static final String THREADS_ARG = "threads";
 
+    private static final String SEARCH_THREADS_ARG = "search_threads";
+
+    private static final String LEARNER_THREADS_ARG = "learner_threads";
+
     private static final String DELTA_ARG = "delta";
 
     private static final double DEFAULT_STEP_SIZE = 0.1;
@@ -111,13 +115,27 @@ public class Main {
                 .desc("Number of features to select; Default is " + DEFAULT_FEATURES_NUMBER)
                 .type(Integer.class)
                 .build());
-        /*OPTIONS.addOption(Option.builder("t")
+        OPTIONS.addOption(Option.builder("p")
                 .longOpt(THREADS_ARG)
                 .hasArg()
                 .argName("threads number")
-                .desc("Number of threads to work on")
+                .desc("Number of threads to work on; Default is number of processors")
+                .type(Integer.class)
+                .build());
+        OPTIONS.addOption(Option.builder("ps")
+                .longOpt(SEARCH_THREADS_ARG)
+                .hasArg()
+                .argName("threads number")
+                .desc("Number of points evaluated concurrently; Default is number of threads")
                 .type(Integer.class)
-                .build());*/
+                .build());
+        OPTIONS.addOption(Option.builder("pl")
+                .longOpt(LEARNER_THREADS_ARG)
+                .hasArg()
+                .argName("threads number")
+                .desc("Number of threads of a single learner; Default is " + ComputeBudget.getQuota(ComputeBudget.Layer.LEARNER))
+                .type(Integer.class)
+                .build());
         OPTIONS.addOption(Option.builder("stop")
                 .longOpt(STOP_ARG)
                 .hasArg()
@@ -261,6 +279,13 @@ public class Main {
                 double delta = Optional.ofNullable(arguments.getOptionValue(DELTA_ARG)).map(Double::valueOf).orElse(DEFAULT_STEP_SIZE);
                 LOGGER.info("Step size: {}", delta);
 
+                int threads = Optional.ofNullable(arguments.getOptionValue(THREADS_ARG)).map(Integer::valueOf).orElse(ComputeBudget.getParallelism());
+                int searchThreads = Optional.ofNullable(arguments.getOptionValue(SEARCH_THREADS_ARG)).map(Integer::valueOf).orElse(threads);
+                int learnerThreads = Optional.ofNullable(arguments.getOptionValue(LEARNER_THREADS_ARG)).map(Integer::valueOf)
+                        .orElse(ComputeBudget.getQuota(ComputeBudget.Layer.LEARNER));
+                LOGGER.info("{} threads; {} points evaluated concurrently; {} threads per learner", new Object[] {threads, searchThreads, learnerThreads});
+                ComputeBudget.configure(threads, searchThreads, learnerThreads);
+
                 int latchSize = Optional.ofNullable(arguments.getOptionValue(STOP_ARG)).map(Integer::valueOf).orElse(DEFAULT_LATCH_SIZE);
                 if (EnumSet.of(Algo.PQMELIF, Algo.MAMELIF).contains(algo)) {
                     LOGGER.info("{} points will be visited", latchSize);
@@ -277,30 +302,27 @@ public class Main {
                 DataSet dataSet = READER.readCsv(inputFileName);
                 List<Integer> order = IntStream.range(0, dataSet.getInstanceCount()).mapToObj(i -> i).collect(Collectors.toList());
                 Collections.shuffle(order);
-                FoldsEvaluator foldsEvaluator = new SequentalEvaluator(
+                FoldsEvaluator foldsEvaluator = new ParallelEvaluator(
                         classifier,
                         dataSetFilter, new OrderSplitter(testPercent, order), new F1Score()
                 );
+                foldsEvaluator.setResultCache(new SelectionResultCache(SelectionResultCache.DEFAULT_CAPACITY));
 
                 AlgorithmConfig config = new AlgorithmConfig(delta, foldsEvaluator, measures);
                 LocalDateTime startTime = LocalDateTime.now();
                 MeLiF meLif;
-                int threads;
                 switch (algo) {
                     case MELIF:
                         meLif = new BasicMeLiF(config, dataSet);
                         break;
                     case MELIF_PLUS:
-                        threads = 2 * points.length;
-                        meLif = new ParallelMeLiF(config, dataSet, threads);
+                        meLif = new ParallelMeLiF(config, dataSet);
                         break;
                     case PQMELIF:
-                        threads = Runtime.getRuntime().availableProcessors();
-                        meLif = new PriorityQueueMeLiF(config, dataSet, threads);
+                        meLif = new PriorityQueueMeLiF(config, dataSet);
                         break;
                     case MAMELIF:
-                        threads = Runtime.getRuntime().availableProcessors();
-                        meLif = new MultiArmedBanditMeLiF(config, dataSet, threads, 2);
+                        meLif = new MultiArmedBanditMeLiF(config, dataSet, 2);
                         break;
                     default:
                         throw new IllegalArgumentException("No such algorithm: " + algo);
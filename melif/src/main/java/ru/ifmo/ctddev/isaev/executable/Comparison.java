@@ -1,7 +1,9 @@
 package ru.ifmo.ctddev.isaev.executable;
 
+import ru.ifmo.ctddev.isaev.FoldScoreStore;
 import ru.ifmo.ctddev.isaev.results.RunStats;
 
+import java.io.File;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -15,6 +17,16 @@ import static ru.ifmo.ctddev.isaev.melif.impl.FeatureSelectionAlgorithm.FORMAT;
  */
 class Comparison {
 
+    /**
+     * @return store of fold scores in file given by argument {@code index}, or null if the argument is absent
+     */
+    static FoldScoreStore openScoreStore(String[] args, int index) {
+        if (args.length <= index) {
+            return null;
+        }
+        return FoldScoreStore.open(new File(args[index]));
+    }
+
     static double getSpeedImprovementPercent(long prevSeconds, long curSeconds) {
         long diff = prevSeconds - curSeconds;
         return (double) diff / prevSeconds * 100;
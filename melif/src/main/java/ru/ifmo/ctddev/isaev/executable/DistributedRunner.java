@@ -0,0 +1,80 @@
+package ru.ifmo.ctddev.isaev.executable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.ifmo.ctddev.isaev.*;
+import ru.ifmo.ctddev.isaev.feature.measure.SymmetricUncertainty;
+import ru.ifmo.ctddev.isaev.feature.measure.VDM;
+import ru.ifmo.ctddev.isaev.melif.impl.ParallelMeLiF;
+import ru.ifmo.ctddev.isaev.point.Point;
+import ru.ifmo.ctddev.isaev.remote.EvaluationWorker;
+import ru.ifmo.ctddev.isaev.remote.RemoteEvaluator;
+import ru.ifmo.ctddev.isaev.results.RunStats;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+
+/**
+ * Usage: {@code worker <dataset> <port>} starts a worker;
+ * {@code coordinator <dataset> <host:port>...} runs MeLiF evaluating points on the given workers
+ *
+ * @author iisaev
+ */
+public class DistributedRunner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DistributedRunner.class);
+
+    private static final long ORDER_SEED = 42; // workers should split instances into the same folds
+
+    private static final int CONNECTIONS_PER_WORKER = 4;
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        DataSet dataSet = new DataSetReader().readCsv(args[1]);
+        RelevanceMeasure[] measures = new RelevanceMeasure[] {new VDM(), new FitCriterion(), new SymmetricUncertainty(), new SpearmanRankCorrelation()};
+        List<Integer> order = IntStream.range(0, dataSet.getInstanceCount()).mapToObj(i -> i).collect(Collectors.toList());
+        Collections.shuffle(order, new Random(ORDER_SEED));
+        DataSetFilter filter = new PreferredSizeFilter(100);
+        DataSetSplitter splitter = new OrderSplitter(10, order);
+        if (args[0].equals("worker")) {
+            FoldsEvaluator foldsEvaluator = new ParallelEvaluator(Classifiers.SVM, filter, splitter, new F1Score());
+            foldsEvaluator.setResultCache(new SelectionResultCache(SelectionResultCache.DEFAULT_CAPACITY)); // shared by coordinators
+            new EvaluationWorker(new AlgorithmConfig(0.1, foldsEvaluator, measures), dataSet)
+                    .listen(Integer.parseInt(args[2]));
+            Thread.currentThread().join();
+            return;
+        }
+        List<InetSocketAddress> workers = Arrays.stream(args, 2, args.length)
+                .map(address -> {
+                    String[] hostAndPort = address.split(":");
+                    return new InetSocketAddress(hostAndPort[0], Integer.parseInt(hostAndPort[1]));
+                })
+                .collect(Collectors.toList());
+        try (RemoteEvaluator foldsEvaluator = new RemoteEvaluator(workers, CONNECTIONS_PER_WORKER, MAX_ATTEMPTS,
+                Classifiers.SVM, filter, splitter, new F1Score())) {
+            foldsEvaluator.setResultCache(new SelectionResultCache(SelectionResultCache.DEFAULT_CAPACITY));
+            AlgorithmConfig config = new AlgorithmConfig(0.1, foldsEvaluator, measures);
+            Point[] points = new Point[] {
+                    new Point(1.0, 0.0, 0.0, 0.0),
+                    new Point(0.0, 1.0, 0.0, 0.0),
+                    new Point(0.0, 0.0, 1.0, 0.0),
+                    new Point(0.0, 0.0, 0.0, 1.0),
+                    new Point(1.0, 1.0, 1.0, 1.0)
+            };
+            ParallelMeLiF meLif = new ParallelMeLiF(config, dataSet, workers.size() * CONNECTIONS_PER_WORKER);
+            RunStats runStats = meLif.run("Distributed", points, 0);
+            LOGGER.info("Visited {} points; best point is {} with score {}", new Object[] {
+                    runStats.getVisitedPoints(),
+                    runStats.getBestResult().getPoint(),
+                    runStats.getBestResult().getScore()
+            });
+        }
+    }
+}
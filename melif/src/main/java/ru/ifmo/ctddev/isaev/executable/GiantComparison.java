@@ -43,6 +43,9 @@ public class GiantComparison extends Comparison {
         return score.calculate(expectedValues, actual);
     }
 
+    /**
+     * Arguments are directory with datasets and, optionally, file of fold scores kept between runs
+     */
     public static void main(String[] args) throws FileNotFoundException {
         new File("table_results").mkdir();
 
@@ -60,6 +63,8 @@ public class GiantComparison extends Comparison {
         File dataSetDir = new File(args[0]);
         assert dataSetDir.exists();
         assert dataSetDir.isDirectory();
+        FoldScoreStore scoreStore = openScoreStore(args, 1);
+        SelectionResultCache resultCache = new SelectionResultCache(SelectionResultCache.DEFAULT_CAPACITY);
         final boolean[] firstTime = {true};
         List<List<RunStats>> results = Arrays.asList(dataSetDir.listFiles()).stream()
                 .filter(f -> f.getAbsolutePath().endsWith(".csv"))
@@ -76,10 +81,12 @@ public class GiantComparison extends Comparison {
                     double delta = 0.1;
                     Integer threads = 4;
                     LOGGER.info("Threads {}", threads);
-                    AlgorithmConfig config = new AlgorithmConfig(delta,
-                            new SequentalEvaluator(Classifiers.SVM,
-                                    new PreferredSizeFilter(100),
-                                    dataSetSplitter, new F1Score()), MEASURES);
+                    FoldsEvaluator foldsEvaluator = new SequentalEvaluator(Classifiers.SVM,
+                            new PreferredSizeFilter(100),
+                            dataSetSplitter, new F1Score());
+                    foldsEvaluator.setScoreStore(scoreStore);
+                    foldsEvaluator.setResultCache(resultCache);
+                    AlgorithmConfig config = new AlgorithmConfig(delta, foldsEvaluator, MEASURES);
                     allStats.add(new BasicMeLiF(config, dataSet).run(points));
                     System.gc();
                     allStats.add(new PriorityQueueMeLiF(config, dataSet, threads).run("Q50", 50));
@@ -110,6 +117,9 @@ public class GiantComparison extends Comparison {
 
                 })
                 .collect(Collectors.toList());
+        if (scoreStore != null) {
+            scoreStore.close();
+        }
         MDC.put("fileName", "COMMON-" + startTimeString);
 
         PrintWriter writer = new PrintWriter("table_results/" + startTimeString + ".csv");
@@ -46,6 +46,9 @@ public class MultipleComparison extends Comparison {
         return score.calculate(expectedValues, actual);
     }
 
+    /**
+     * Arguments are directory with datasets and, optionally, file of fold scores kept between runs
+     */
     public static void main(String[] args) throws FileNotFoundException {
         new File("table_results").mkdir();
 
@@ -73,6 +76,8 @@ public class MultipleComparison extends Comparison {
         File dataSetDir = new File(args[0]);
         assert dataSetDir.exists();
         assert dataSetDir.isDirectory();
+        FoldScoreStore scoreStore = openScoreStore(args, 1);
+        SelectionResultCache resultCache = new SelectionResultCache(SelectionResultCache.DEFAULT_CAPACITY);
         RelevanceMeasure[] measures = new RelevanceMeasure[] {new VDM(), new FitCriterion(), new SymmetricUncertainty(), new SpearmanRankCorrelation()};
         //ForkJoinPool executorService = new ForkJoinPool(threadsCount);
         ExecutorService executorService = Executors.newFixedThreadPool(threadsCount);
@@ -92,6 +97,8 @@ public class MultipleComparison extends Comparison {
                             Classifiers.SVM,
                             dataSetFilter, new OrderSplitter(10, order), score
                     );
+                    foldsEvaluator.setScoreStore(scoreStore);
+                    foldsEvaluator.setResultCache(resultCache);
                     AlgorithmConfig config = new AlgorithmConfig(0.25, foldsEvaluator, measures);
                     LocalDateTime startTime = LocalDateTime.now();
                     LOGGER.info("Starting SimpleMeliF at {}", startTime);
@@ -143,6 +150,9 @@ public class MultipleComparison extends Comparison {
                 .flatMap(pr -> IntStream.range(0, pr.getBasic().size()).mapToObj(i -> new Pr<>(pr.getBasic().get(i), pr.getParallel().get(i))))
                 .collect(Collectors.toList());
         executorService.shutdown();
+        if (scoreStore != null) {
+            scoreStore.close();
+        }
         MDC.put("fileName", "COMMON-" + startTimeString);
 
         double[] expected = new double[results.size()];
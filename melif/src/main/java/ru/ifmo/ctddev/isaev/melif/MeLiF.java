@@ -2,6 +2,7 @@ package ru.ifmo.ctddev.isaev.melif;
 
 import org.jetbrains.annotations.NotNull;
 import ru.ifmo.ctddev.isaev.point.Point;
+import ru.ifmo.ctddev.isaev.results.RunBudget;
 import ru.ifmo.ctddev.isaev.results.RunStats;
 
 
@@ -12,4 +13,26 @@ public interface MeLiF {
     RunStats run(@NotNull Point[] points);
 
     RunStats run(@NotNull String name, @NotNull Point[] points, int pointsToVisit);
+
+    @NotNull
+    RunBudget getBudget();
+
+    /**
+     * Sets limits of the next runs; see {@link RunBudget}
+     */
+    void setBudget(@NotNull RunBudget budget);
+
+    /**
+     * Runs within the budget, which applies to this run only; returned stats hold the best result found
+     * before the budget was exhausted, or no best result if no point was evaluated fully
+     */
+    default RunStats run(@NotNull String name, @NotNull Point[] points, int pointsToVisit, @NotNull RunBudget budget) {
+        RunBudget previous = getBudget();
+        setBudget(budget);
+        try {
+            return run(name, points, pointsToVisit);
+        } finally {
+            setBudget(previous);
+        }
+    }
 }
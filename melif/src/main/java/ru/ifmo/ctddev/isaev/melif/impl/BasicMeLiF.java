@@ -3,16 +3,19 @@ package ru.ifmo.ctddev.isaev.melif.impl;
 import org.jetbrains.annotations.NotNull;
 import ru.ifmo.ctddev.isaev.AlgorithmConfig;
 import ru.ifmo.ctddev.isaev.DataSet;
+import ru.ifmo.ctddev.isaev.FoldsEvaluator;
 import ru.ifmo.ctddev.isaev.SelectionResult;
 import ru.ifmo.ctddev.isaev.melif.MeLiF;
 import ru.ifmo.ctddev.isaev.point.Point;
 import ru.ifmo.ctddev.isaev.results.RunStats;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.stream.Collectors;
 
 
@@ -23,12 +26,29 @@ import java.util.stream.Collectors;
  */
 public class BasicMeLiF extends FeatureSelectionAlgorithm implements MeLiF {
 
-    protected final Set<Point> visitedPoints = new TreeSet<>();
+    /**
+     * Concurrent, since subclasses descend from several points at once
+     */
+    protected final Set<Point> visitedPoints = new ConcurrentSkipListSet<>();
+
+    private volatile boolean speculative;
 
     public BasicMeLiF(AlgorithmConfig config, DataSet dataSet) {
         super(config, dataSet);
     }
 
+    public boolean isSpeculative() {
+        return speculative;
+    }
+
+    /**
+     * In speculative mode all neighbours of the current point are evaluated at once;
+     * see {@link #performSpeculativeDescend(Point, RunStats)}
+     */
+    public void setSpeculative(boolean speculative) {
+        this.speculative = speculative;
+    }
+
     @Override
     public RunStats run(@NotNull String name, @NotNull Point[] points, int pointsToVisit) {
         Arrays.asList(points).forEach(p -> {
@@ -37,7 +57,7 @@ public class BasicMeLiF extends FeatureSelectionAlgorithm implements MeLiF {
             }
         });
 
-        RunStats runStats = new RunStats(config, dataSet, name);
+        RunStats runStats = newRunStats(name);
 
         logger.info("Started {} at {}", name, runStats.getStartTime());
         List<SelectionResult> scores = Arrays.asList(points).stream()
@@ -45,10 +65,7 @@ public class BasicMeLiF extends FeatureSelectionAlgorithm implements MeLiF {
                 .collect(Collectors.toList());
         logger.info("Total scores: ");
         scores.stream().mapToDouble(SelectionResult::getScore).forEach(System.out::println);
-        logger.info("Max score: {} at point {}",
-                runStats.getBestResult().getScore(),
-                runStats.getBestResult().getPoint()
-        );
+        logBestResult(runStats);
         LocalDateTime finishTime = LocalDateTime.now();
         runStats.setFinishTime(finishTime);
         logger.info("Finished {} at {}", name, finishTime);
@@ -71,6 +88,9 @@ public class BasicMeLiF extends FeatureSelectionAlgorithm implements MeLiF {
     }
 
     protected SelectionResult performCoordinateDescend(Point point, RunStats runStats) {
+        if (speculative) {
+            return performSpeculativeDescend(point, runStats);
+        }
         SelectionResult bestScore = foldsEvaluator.getSelectionResult(dataSet, point, runStats);
         visitedPoints.add(point);
         if (runStats.getBestResult() != null && runStats.getScore() > bestScore.getScore()) {
@@ -82,7 +102,9 @@ public class BasicMeLiF extends FeatureSelectionAlgorithm implements MeLiF {
         int gen = 0;
         while (smthChanged) {
             smthChanged = false;
-
+            if (runStats.isStopped()) {
+                return bestScore;
+            }
             for (int i = 0; i < coordinates.length; i++) {
                 if (runStats.getBestResult() != null && Math.abs(runStats.getBestResult().getScore() - 1.0) < 0.0001) {
                     return runStats.getBestResult();
@@ -111,4 +133,87 @@ public class BasicMeLiF extends FeatureSelectionAlgorithm implements MeLiF {
         }
         return bestScore;
     }
+
+    /**
+     * Starts evaluation of all 2·d neighbours of the current point and takes the first improving one
+     * in the order of sequential descent, so the path is the same as without speculation.
+     * Evaluations of neighbours after the taken one are cancelled; with evaluators running a point as one task,
+     * such as {@link ru.ifmo.ctddev.isaev.SequentalEvaluator}, a neighbour that has already started is evaluated
+     * to the end and counted in run stats.
+     * Already visited neighbours are skipped, as in sequential descent; neighbours evaluated to the end are marked
+     * visited, cancelled ones are not.
+     * If the evaluator has {@link FoldsEvaluator#getMinFidelity() multi-fidelity} mode, neighbours are evaluated by
+     * {@link FoldsEvaluator#evaluateAll} and only the promoted ones are compared
+     */
+    protected SelectionResult performSpeculativeDescend(Point point, RunStats runStats) {
+        SelectionResult bestScore = foldsEvaluator.getSelectionResult(dataSet, point, runStats);
+        visitedPoints.add(point);
+        if (runStats.getBestResult() != null && runStats.getScore() > bestScore.getScore()) {
+            bestScore = runStats.getBestResult();
+        }
+
+        boolean smthChanged = true;
+        double[] coordinates = point.getCoordinates();
+        int gen = 0;
+        while (smthChanged) {
+            smthChanged = false;
+            if (runStats.isStopped()) {
+                return bestScore;
+            }
+            if (runStats.getBestResult() != null && Math.abs(runStats.getBestResult().getScore() - 1.0) < 0.0001) {
+                return runStats.getBestResult();
+            }
+            List<Point> neighbours = new ArrayList<>(2 * coordinates.length);
+            for (int i = 0; i < coordinates.length; i++) {
+                final int finalI = i;
+                Point plusDelta = new Point(gen, (c) -> c[finalI] += config.getDelta(), coordinates);
+                if (!visitedPoints.contains(plusDelta)) {
+                    neighbours.add(plusDelta);
+                }
+                Point minusDelta = new Point(gen, (c) -> c[finalI] -= config.getDelta(), coordinates);
+                if (!visitedPoints.contains(minusDelta)) {
+                    neighbours.add(minusDelta);
+                }
+            }
+            if (foldsEvaluator.getMinFidelity() < 1.0) {
+                List<SelectionResult> promoted = foldsEvaluator.evaluateAll(dataSet, neighbours, runStats);
+                for (int i = 0; i < neighbours.size(); i++) {
+                    SelectionResult score = promoted.get(i);
+                    if (score == null) {
+                        continue;
+                    }
+                    visitedPoints.add(neighbours.get(i)); // not a copy: copying normalizes coordinates
+                    if (score.betterThan(bestScore)) {
+                        bestScore = score;
+                        coordinates = neighbours.get(i).getCoordinates();
+                        smthChanged = true;
+                        break;
+                    }
+                }
+                ++gen;
+                continue;
+            }
+            List<CompletableFuture<SelectionResult>> scores = neighbours.stream()
+                    .map(p -> foldsEvaluator.evaluateAsync(dataSet, p, runStats))
+                    .collect(Collectors.toList());
+            for (int i = 0; i < neighbours.size(); i++) {
+                SelectionResult score = scores.get(i).join();
+                if (score.betterThan(bestScore)) {
+                    bestScore = score;
+                    coordinates = neighbours.get(i).getCoordinates();
+                    smthChanged = true;
+                    scores.subList(i + 1, scores.size()).forEach(f -> f.cancel(false));
+                    break;
+                }
+            }
+            for (int i = 0; i < neighbours.size(); i++) {
+                CompletableFuture<SelectionResult> score = scores.get(i);
+                if (score.isDone() && !score.isCancelled() && !score.isCompletedExceptionally()) {
+                    visitedPoints.add(neighbours.get(i)); // not a copy: copying normalizes coordinates
+                }
+            }
+            ++gen;
+        }
+        return bestScore;
+    }
 }
@@ -5,6 +5,9 @@ import org.slf4j.LoggerFactory;
 import ru.ifmo.ctddev.isaev.AlgorithmConfig;
 import ru.ifmo.ctddev.isaev.DataSet;
 import ru.ifmo.ctddev.isaev.FoldsEvaluator;
+import ru.ifmo.ctddev.isaev.SelectionResult;
+import ru.ifmo.ctddev.isaev.results.RunBudget;
+import ru.ifmo.ctddev.isaev.results.RunStats;
 
 import java.text.DecimalFormat;
 
@@ -24,9 +27,38 @@ public class FeatureSelectionAlgorithm {
 
     protected final DataSet dataSet;
 
+    private volatile RunBudget budget = RunBudget.UNLIMITED;
+
     public FeatureSelectionAlgorithm(AlgorithmConfig config, DataSet dataSet) {
         this.config = config;
         this.foldsEvaluator = config.getFoldsEvaluator();
         this.dataSet = dataSet;
     }
+
+    public RunBudget getBudget() {
+        return budget;
+    }
+
+    public void setBudget(RunBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * A run stopped by its budget before any point was evaluated fully has no best result
+     */
+    protected void logBestResult(RunStats runStats) {
+        SelectionResult bestResult = runStats.getBestResult();
+        if (bestResult == null) {
+            logger.info("No point was evaluated fully before {} was stopped", runStats.getAlgorithmName());
+        } else {
+            logger.info("Max score: {} at point {}", bestResult.getScore(), bestResult.getPoint());
+        }
+    }
+
+    /**
+     * @return stats of a new run limited by the current budget
+     */
+    protected RunStats newRunStats(String name) {
+        return new RunStats(config, dataSet, name, budget);
+    }
 }
@@ -8,10 +8,10 @@ import ru.ifmo.ctddev.isaev.results.RunStats;
 
 import java.util.Comparator;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CountDownLatch;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 
@@ -29,34 +29,26 @@ public class MeLifStar extends ParallelMeLiF {
     protected SelectionResult performCoordinateDescend(Point point, RunStats runStats) {
         SelectionResult result = foldsEvaluator.getSelectionResult(dataSet,point, runStats);
         visitedPoints.add(point);
-        return processChildren(result, runStats);
+        return processChildren(result, runStats).join();
     }
 
-    private SelectionResult processChildren(SelectionResult parent, RunStats runStats) {
-        List<Point> neighbours =parent.getPoint().getNeighbours(config.getDelta());
-        CountDownLatch latch = new CountDownLatch(neighbours.size());
-        Queue<SelectionResult> results = new ConcurrentLinkedQueue<>();
-        neighbours.forEach(p -> {
-            if (!visitedPoints.contains(p)) {
-                visitedPoints.add(p);
-                getExecutorService().submit(() -> {
-                    results.add(foldsEvaluator.getSelectionResult(dataSet,p, runStats));
-                    latch.countDown();
-                });
-            } else {
-                latch.countDown();
-            }
-        });
-        try {
-            latch.await();
-            return Stream.concat(
-                    Stream.of(parent),
-                    results.stream()
-                            .filter(res -> res.getScore() > parent.getScore())
-                            .map(ep -> processChildren(ep, runStats))
-            ).min(Comparator.comparingDouble(SelectionResult::getScore)).get();
-        } catch (InterruptedException e) {
-            throw new RuntimeException("Operation was interrupted", e);
-        }
+    /**
+     * Evaluations of children and their subtrees are chained as futures, so no thread waits for a subtree
+     */
+    private CompletableFuture<SelectionResult> processChildren(SelectionResult parent, RunStats runStats) {
+        List<CompletableFuture<SelectionResult>> children = parent.getPoint().getNeighbours(config.getDelta()).stream()
+                .filter(p -> !runStats.isStopped() && visitedPoints.add(p))
+                .map(p -> foldsEvaluator.evaluateAsync(dataSet, p, runStats)
+                        .thenCompose(res -> res.betterThan(parent)
+                                ? processChildren(res, runStats)
+                                : CompletableFuture.<SelectionResult>completedFuture(null)))
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(children.toArray(new CompletableFuture[children.size()]))
+                .thenApply(v -> Stream.concat(
+                        Stream.of(parent),
+                        children.stream()
+                                .map(CompletableFuture::join)
+                                .filter(Objects::nonNull)
+                ).min(Comparator.comparingDouble(SelectionResult::getScore)).get());
     }
 }
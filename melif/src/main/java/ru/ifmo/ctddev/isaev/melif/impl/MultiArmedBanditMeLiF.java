@@ -5,6 +5,7 @@ import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.ifmo.ctddev.isaev.AlgorithmConfig;
+import ru.ifmo.ctddev.isaev.ComputeBudget;
 import ru.ifmo.ctddev.isaev.DataSet;
 import ru.ifmo.ctddev.isaev.LinearSearchPriorityBlockingQueue;
 import ru.ifmo.ctddev.isaev.SelectionResult;
@@ -35,8 +36,6 @@ import static java.lang.Math.sqrt;
 public class MultiArmedBanditMeLiF extends FeatureSelectionAlgorithm implements MeLiF {
     private final ExecutorService executorService;
 
-    private final int threads;
-
     private static final Logger LOGGER = LoggerFactory.getLogger(MultiArmedBanditMeLiF.class);
 
     public ExecutorService getExecutorService() {
@@ -51,9 +50,19 @@ public class MultiArmedBanditMeLiF extends FeatureSelectionAlgorithm implements
 
     private int tries = 0;
 
+    /**
+     * Evaluates points in the shared pool within search quota of {@link ComputeBudget}
+     */
+    public MultiArmedBanditMeLiF(AlgorithmConfig config, DataSet dataSet, int splitNumber) {
+        this(config, dataSet, ComputeBudget.newExecutor(ComputeBudget.Layer.SEARCH), splitNumber);
+    }
+
     public MultiArmedBanditMeLiF(AlgorithmConfig config, DataSet dataSet, int threads, int splitNumber) {
+        this(config, dataSet, Executors.newFixedThreadPool(threads), splitNumber);
+    }
+
+    public MultiArmedBanditMeLiF(AlgorithmConfig config, DataSet dataSet, ExecutorService executorService, int splitNumber) {
         super(config, dataSet);
-        this.threads = threads;
         int dimension = config.getMeasures().length;
 
         Map<Integer, Point> spaces = generateStartingPoints(dimension, splitNumber);
@@ -71,7 +80,7 @@ public class MultiArmedBanditMeLiF extends FeatureSelectionAlgorithm implements
             pointQueues.put(key, queue);
         });
         this.pointsQueues = Collections.unmodifiableMap(pointQueues);
-        this.executorService = Executors.newFixedThreadPool(threads);
+        this.executorService = executorService;
         holder = new Holder(pointQueues.size());
     }
 
@@ -193,14 +202,13 @@ public class MultiArmedBanditMeLiF extends FeatureSelectionAlgorithm implements
                 logger.error("Queue {} is empty", arm);
                 return;
             }
-            if (visitedPoints.contains(point)) {
+            if (!visitedPoints.add(point)) {
                 logger.warn("Point is already processed: {}", point);
                 return;
             }
 
             logger.info("Processing point {} in queue {}", point, arm);
             SelectionResult res = foldsEvaluator.getSelectionResult(dataSet, point, runStats);
-            visitedPoints.add(point);
             List<Point> neighbours = point.getNeighbours(config.getDelta());
             double award = res.getScore();
             neighbours.stream()
@@ -218,11 +226,16 @@ public class MultiArmedBanditMeLiF extends FeatureSelectionAlgorithm implements
 
     @Override
     public RunStats run(@NotNull String name, @NotNull Point[] unused, int latchSize) {
-        RunStats runStats = new RunStats(config, dataSet, name);
+        RunStats runStats = newRunStats(name);
         logger.info("Started {} at {}", name, runStats.getStartTime());
 
         CountDownLatch latch = new CountDownLatch(latchSize);
         pointsQueues.values().forEach(queue -> executorService.submit(new PointProcessingTask(() -> {
+            if (runStats.isStopped()) {
+                while (latch.getCount() != 0) {
+                    latch.countDown();
+                }
+            }
             latch.countDown();
             if (runStats.getBestResult() != null && Math.abs(runStats.getBestResult().getScore() - 1.0) < 0.0001) {
                 while (latch.getCount() != 0) {
@@ -232,15 +245,13 @@ public class MultiArmedBanditMeLiF extends FeatureSelectionAlgorithm implements
             return latch.getCount() == 0;
         }, runStats)));
         try {
-            latch.await();
+            runStats.await(latch);
         } catch (InterruptedException e) {
             throw new IllegalStateException(e);
         }
-        executorService.shutdownNow();
-        LOGGER.info("Max score: {} at point {}",
-                runStats.getBestResult().getScore(),
-                runStats.getBestResult().getPoint()
-        );
+        runStats.cancel(); // queued tasks see the stop condition and finish at once
+        executorService.shutdown();
+        logBestResult(runStats);
         runStats.setFinishTime(LocalDateTime.now());
         LOGGER.info("Finished {} at {}", getClass().getSimpleName(), runStats.getFinishTime());
         LOGGER.info("Working time: {} seconds", runStats.getWorkTime());
@@ -253,11 +264,16 @@ public class MultiArmedBanditMeLiF extends FeatureSelectionAlgorithm implements
 
 
     public RunStats runUntilNoImproveOnLastN(String name, Point[] points, int lastN) {
-        RunStats runStats = new RunStats(config, dataSet, name);
+        RunStats runStats = newRunStats(name);
         logger.info("Started {} at {}", name, runStats.getStartTime());
 
         CountDownLatch latch = new CountDownLatch(1);
         pointsQueues.values().forEach(queue -> executorService.submit(new PointProcessingTask(() -> {
+            if (runStats.isStopped()) {
+                while (latch.getCount() != 0) {
+                    latch.countDown();
+                }
+            }
             if (runStats.getBestResult() != null && Math.abs(runStats.getBestResult().getScore() - 1.0) < 0.0001) {
                 while (latch.getCount() != 0) {
                     latch.countDown();
@@ -274,15 +290,13 @@ public class MultiArmedBanditMeLiF extends FeatureSelectionAlgorithm implements
             }
         }, runStats)));
         try {
-            latch.await();
+            runStats.await(latch);
         } catch (InterruptedException e) {
             throw new IllegalStateException(e);
         }
-        executorService.shutdownNow();
-        LOGGER.info("Max score: {} at point {}",
-                runStats.getBestResult().getScore(),
-                runStats.getBestResult().getPoint()
-        );
+        runStats.cancel(); // queued tasks see the stop condition and finish at once
+        executorService.shutdown();
+        logBestResult(runStats);
         runStats.setFinishTime(LocalDateTime.now());
         LOGGER.info("Finished {} at {}", getClass().getSimpleName(), runStats.getFinishTime());
         LOGGER.info("Working time: {} seconds", runStats.getWorkTime());
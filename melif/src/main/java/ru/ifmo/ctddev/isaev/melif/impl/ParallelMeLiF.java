@@ -4,6 +4,7 @@ import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.ifmo.ctddev.isaev.AlgorithmConfig;
+import ru.ifmo.ctddev.isaev.ComputeBudget;
 import ru.ifmo.ctddev.isaev.DataSet;
 import ru.ifmo.ctddev.isaev.SelectionResult;
 import ru.ifmo.ctddev.isaev.point.Point;
@@ -12,7 +13,6 @@ import ru.ifmo.ctddev.isaev.results.RunStats;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
@@ -31,7 +31,12 @@ public class ParallelMeLiF extends BasicMeLiF {
         return executorService;
     }
 
-    protected final Set<Point> visitedPoints = new ConcurrentSkipListSet<>();
+    /**
+     * Evaluates points in the shared pool within search quota of {@link ComputeBudget}
+     */
+    public ParallelMeLiF(AlgorithmConfig config, DataSet dataSet) {
+        this(config, dataSet, ComputeBudget.newExecutor(ComputeBudget.Layer.SEARCH));
+    }
 
     public ParallelMeLiF(AlgorithmConfig config, DataSet dataSet, int threads) {
         this(config, dataSet, Executors.newFixedThreadPool(threads));
@@ -59,7 +64,7 @@ public class ParallelMeLiF extends BasicMeLiF {
             }
         });
 
-        RunStats runStats = new RunStats(config, dataSet, name);
+        RunStats runStats = newRunStats(name);
         logger.info("Started {} at {}", name, runStats.getStartTime());
         LOGGER.info("Started {} at {}", getClass().getSimpleName(), runStats.getStartTime());
         CountDownLatch pointsLatch = new CountDownLatch(points.length);
@@ -74,9 +79,6 @@ public class ParallelMeLiF extends BasicMeLiF {
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
-        scoreFutures.forEach(f -> {
-            assert f.isDone();
-        });
         List<SelectionResult> scores = scoreFutures.stream().map(f -> {
             try {
                 return f.get();
@@ -86,10 +88,7 @@ public class ParallelMeLiF extends BasicMeLiF {
         }).collect(Collectors.toList());
         LOGGER.info("Total scores: ");
         scores.stream().mapToDouble(SelectionResult::getScore).forEach(System.out::println);
-        LOGGER.info("Max score: {} at point {}",
-                runStats.getBestResult().getScore(),
-                runStats.getBestResult().getPoint()
-        );
+        logBestResult(runStats);
         runStats.setFinishTime(LocalDateTime.now());
         LOGGER.info("Finished {} at {}", getClass().getSimpleName(), runStats.getFinishTime());
         LOGGER.info("Working time: {} seconds", runStats.getWorkTime());
@@ -110,6 +109,9 @@ public class ParallelMeLiF extends BasicMeLiF {
     }
 
     protected SelectionResult performCoordinateDescend(Point point, RunStats runStats) {
+        if (isSpeculative()) {
+            return performSpeculativeDescend(point, runStats);
+        }
         SelectionResult bestScore = foldsEvaluator.getSelectionResult(dataSet, point, runStats);
         visitedPoints.add(point);
         if (runStats.getBestResult() != null && runStats.getScore() > bestScore.getScore()) {
@@ -123,39 +125,29 @@ public class ParallelMeLiF extends BasicMeLiF {
         int gen = 0;
         while (smthChanged) {
             smthChanged = false;
+            if (runStats.isStopped()) {
+                return bestScore;
+            }
             for (int i = 0; i < coordinates.length; i++) {
-                CountDownLatch latch = new CountDownLatch(2);
-
                 final int finalI = i;
                 Point plusDelta = new Point(gen, (c) -> c[finalI] += config.getDelta(), coordinates);
-                Future<SelectionResult> plusDeltaScore = getSelectionResultFuture(runStats, bestScore, plusDelta, latch);
+                CompletableFuture<SelectionResult> plusDeltaScore = visitPointAsync(plusDelta, runStats, bestScore);
 
                 Point minusDelta = new Point(gen, (c) -> c[finalI] -= config.getDelta(), coordinates);
-                Future<SelectionResult> minusDeltaScore = getSelectionResultFuture(runStats, bestScore, minusDelta, latch);
-
-                try {
-                    latch.await();
-
-                    assert plusDeltaScore.isDone();
-                    assert minusDeltaScore.isDone();
-
-                    if (plusDeltaScore.get().betterThan(bestScore)) {
-                        bestScore = plusDeltaScore.get();
-                        coordinates = plusDelta.getCoordinates();
-                        smthChanged = true;
-                    }
-                    if (minusDeltaScore.get().betterThan(bestScore)) {
-                        bestScore = minusDeltaScore.get();
-                        coordinates = minusDelta.getCoordinates();
-                        smthChanged = true;
-                    }
-                    if (smthChanged) {
-                        break;
-                    }
-                } catch (InterruptedException e) {
-                    throw new IllegalArgumentException("Waiting on latch interrupted!");
-                } catch (ExecutionException e) {
-                    throw new RuntimeException(e);
+                CompletableFuture<SelectionResult> minusDeltaScore = visitPointAsync(minusDelta, runStats, bestScore);
+
+                if (plusDeltaScore.join().betterThan(bestScore)) {
+                    bestScore = plusDeltaScore.join();
+                    coordinates = plusDelta.getCoordinates();
+                    smthChanged = true;
+                }
+                if (minusDeltaScore.join().betterThan(bestScore)) {
+                    bestScore = minusDeltaScore.join();
+                    coordinates = minusDelta.getCoordinates();
+                    smthChanged = true;
+                }
+                if (smthChanged) {
+                    break;
                 }
             }
             ++gen;
@@ -163,20 +155,18 @@ public class ParallelMeLiF extends BasicMeLiF {
         return bestScore;
     }
 
-    private Future<SelectionResult> getSelectionResultFuture(RunStats runStats, SelectionResult bestScore, Point plusDelta, CountDownLatch latch) {
-        Future<SelectionResult> plusDeltaScore;
-        if (!visitedPoints.contains(plusDelta)) {
-            plusDeltaScore = executorService.submit(() -> {
-                SelectionResult result = visitPoint(plusDelta, runStats, bestScore);
-                latch.countDown();
-                return result;
-            });
-        } else {
-            latch.countDown();
-            plusDeltaScore = CompletableFuture.completedFuture(bestScore);
+    /**
+     * Starts evaluation of the point without waiting for it; folds are evaluated by the evaluator's executor.
+     * Points already visited by this algorithm are taken from the result cache of the evaluator;
+     * without the cache they are not evaluated again and are not taken as an improvement
+     */
+    protected CompletableFuture<SelectionResult> visitPointAsync(Point point, RunStats runStats, SelectionResult bestResult) {
+        if (runStats.getBestResult() != null && Math.abs(runStats.getBestResult().getScore() - 1.0) < 0.0001) {
+            return CompletableFuture.completedFuture(runStats.getBestResult());
         }
-        return plusDeltaScore;
+        if (!visitedPoints.add(point) && foldsEvaluator.getResultCache() == null) { // not a copy: copying normalizes coordinates
+            return CompletableFuture.completedFuture(bestResult);
+        }
+        return foldsEvaluator.evaluateAsync(dataSet, point, runStats);
     }
-
-
 }
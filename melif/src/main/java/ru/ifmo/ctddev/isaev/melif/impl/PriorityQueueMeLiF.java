@@ -4,8 +4,9 @@ import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.ifmo.ctddev.isaev.AlgorithmConfig;
+import ru.ifmo.ctddev.isaev.ComputeBudget;
 import ru.ifmo.ctddev.isaev.DataSet;
-import ru.ifmo.ctddev.isaev.PriorityExecutor;
+import ru.ifmo.ctddev.isaev.PriorityTaskQueue;
 import ru.ifmo.ctddev.isaev.SelectionResult;
 import ru.ifmo.ctddev.isaev.melif.MeLiF;
 import ru.ifmo.ctddev.isaev.point.Point;
@@ -19,6 +20,8 @@ import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Supplier;
 import java.util.stream.IntStream;
 
@@ -28,9 +31,7 @@ import java.util.stream.IntStream;
  */
 public class PriorityQueueMeLiF extends FeatureSelectionAlgorithm implements MeLiF {
 
-    private static final double PRIORITY_INCREMENT = 0.1;
-
-    private final PriorityExecutor executorService;
+    private final PriorityTaskQueue executorService;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PriorityQueueMeLiF.class);
 
@@ -38,7 +39,18 @@ public class PriorityQueueMeLiF extends FeatureSelectionAlgorithm implements MeL
 
     private final List<Point> startingPoints = new ArrayList<>();
 
+    /**
+     * Evaluates points in the shared pool within search quota of {@link ComputeBudget}
+     */
+    public PriorityQueueMeLiF(AlgorithmConfig config, DataSet dataSet) {
+        this(config, dataSet, ComputeBudget.newExecutor(ComputeBudget.Layer.SEARCH));
+    }
+
     public PriorityQueueMeLiF(AlgorithmConfig config, DataSet dataSet, int threads) {
+        this(config, dataSet, Executors.newFixedThreadPool(threads));
+    }
+
+    public PriorityQueueMeLiF(AlgorithmConfig config, DataSet dataSet, ExecutorService executorService) {
         super(config, dataSet);
         int dimension = config.getMeasures().length;
 
@@ -53,7 +65,7 @@ public class PriorityQueueMeLiF extends FeatureSelectionAlgorithm implements MeL
                     coordinates[dimension - 1] = 1.0;
                     startingPoints.add(new Point(coordinates));
                 });
-        this.executorService = new PriorityExecutor(threads, false);
+        this.executorService = new PriorityTaskQueue(executorService);
     }
 
     @Override
@@ -68,10 +80,15 @@ public class PriorityQueueMeLiF extends FeatureSelectionAlgorithm implements MeL
     }
 
     public RunStats run(@NotNull String name, @NotNull Point[] ignored, int latchSize, boolean stopIfFoundOne) {
-        RunStats runStats = new RunStats(config, dataSet, name);
+        RunStats runStats = newRunStats(name);
         logger.info("Started {} at {}", name, runStats.getStartTime());
         CountDownLatch latch = new CountDownLatch(latchSize);
         final Supplier<Boolean> stopCondition = () -> {
+            if (runStats.isStopped()) {
+                while (latch.getCount() != 0) {
+                    latch.countDown();
+                }
+            }
             latch.countDown();
             if (runStats.getBestResult() != null) {
                 if (stopIfFoundOne && Math.abs(runStats.getBestResult().getScore() - 1.0) < 0.0001) {
@@ -87,15 +104,13 @@ public class PriorityQueueMeLiF extends FeatureSelectionAlgorithm implements MeL
                 1.0
         ));
         try {
-            latch.await();
+            runStats.await(latch);
         } catch (InterruptedException e) {
             throw new IllegalStateException(e);
         }
-        executorService.shutdownNow();
-        LOGGER.info("Max score: {} at point {}",
-                runStats.getBestResult().getScore(),
-                runStats.getBestResult().getPoint()
-        );
+        runStats.cancel(); // queued tasks see the stop condition and finish at once
+        executorService.shutdown();
+        logBestResult(runStats);
         runStats.setFinishTime(LocalDateTime.now());
         LOGGER.info("Finished {} at {}", getClass().getSimpleName(), runStats.getFinishTime());
         LOGGER.info("Working time: {} seconds", runStats.getWorkTime());
@@ -120,15 +135,13 @@ public class PriorityQueueMeLiF extends FeatureSelectionAlgorithm implements MeL
             if (stopCondition.get()) {
                 return 0.0;
             }
-            if (visitedPoints.contains(point)) {
+            if (!visitedPoints.add(point)) {
                 logger.warn("Point is already processed: " + point);
                 return 0.0;
             }
             logger.info("Processing point {}", point);
             SelectionResult res = foldsEvaluator.getSelectionResult(dataSet, point, runStats);
-            visitedPoints.add(point);
             List<Point> neighbours = point.getNeighbours(config.getDelta());
-            executorService.increaseTasksPriorities(PRIORITY_INCREMENT);
             neighbours.forEach(p -> {
                 if (!visitedPoints.contains(p)) {
                     executorService.submitWithPriority(new PointProcessingTask(p, stopCondition, runStats),
@@ -149,10 +162,15 @@ public class PriorityQueueMeLiF extends FeatureSelectionAlgorithm implements MeL
     }
 
     public RunStats runUntilNoImproveOnLastN(String name, Point[] points, int untilStop) {
-        RunStats runStats = new RunStats(config, dataSet, name);
+        RunStats runStats = newRunStats(name);
         logger.info("Started {} at {}", name, runStats.getStartTime());
         CountDownLatch latch = new CountDownLatch(1);
         final Supplier<Boolean> stopCondition = () -> {
+            if (runStats.isStopped()) {
+                while (latch.getCount() != 0) {
+                    latch.countDown();
+                }
+            }
             if (runStats.getBestResult() != null && Math.abs(runStats.getBestResult().getScore() - 1.0) < 0.0001) {
                 while (latch.getCount() != 0) {
                     latch.countDown();
@@ -173,15 +191,13 @@ public class PriorityQueueMeLiF extends FeatureSelectionAlgorithm implements MeL
                 1.0
         ));
         try {
-            latch.await();
+            runStats.await(latch);
         } catch (InterruptedException e) {
             throw new IllegalStateException(e);
         }
-        executorService.shutdownNow();
-        LOGGER.info("Max score: {} at point {}",
-                runStats.getBestResult().getScore(),
-                runStats.getBestResult().getPoint()
-        );
+        runStats.cancel(); // queued tasks see the stop condition and finish at once
+        executorService.shutdown();
+        logBestResult(runStats);
         runStats.setFinishTime(LocalDateTime.now());
         LOGGER.info("Finished {} at {}", getClass().getSimpleName(), runStats.getFinishTime());
         LOGGER.info("Working time: {} seconds", runStats.getWorkTime());
@@ -59,7 +59,7 @@ public class StupidParallelMeLiF extends BasicMeLiF {
             }
         });
 
-        RunStats runStats = new RunStats(config, dataSet, name);
+        RunStats runStats = newRunStats(name);
         logger.info("Started {} at {}", name, runStats.getStartTime());
 
         LOGGER.info("Started {} at {}", getClass().getSimpleName(), runStats.getStartTime());
@@ -87,10 +87,7 @@ public class StupidParallelMeLiF extends BasicMeLiF {
         }).collect(Collectors.toList());
         LOGGER.info("Total scores: ");
         scores.stream().mapToDouble(SelectionResult::getScore).forEach(System.out::println);
-        LOGGER.info("Max score: {} at point {}",
-                runStats.getBestResult().getScore(),
-                runStats.getBestResult().getPoint()
-        );
+        logBestResult(runStats);
         runStats.setFinishTime(LocalDateTime.now());
         LOGGER.info("Finished {} at {}", getClass().getSimpleName(), runStats.getFinishTime());
         LOGGER.info("Working time: {} seconds", runStats.getWorkTime());
@@ -13,6 +13,7 @@ import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -57,7 +58,7 @@ public class StupidParallelMeLiF2 extends ParallelMeLiF {
             }
         });
 
-        RunStats runStats = new RunStats(config, dataSet, name);
+        RunStats runStats = newRunStats(name);
         logger.info("Started {} at {}", name, runStats.getStartTime());
 
         logger.info("Started {} at {}", getClass().getSimpleName(), runStats.getStartTime());
@@ -66,10 +67,7 @@ public class StupidParallelMeLiF2 extends ParallelMeLiF {
                 .collect(Collectors.toList());
         logger.info("Total scores: ");
         scores.stream().mapToDouble(SelectionResult::getScore).forEach(System.out::println);
-        logger.info("Max score: {} at point {}",
-                runStats.getBestResult().getScore(),
-                runStats.getBestResult().getPoint()
-        );
+        logBestResult(runStats);
         LocalDateTime finishTime = LocalDateTime.now();
         runStats.setFinishTime(finishTime);
         logger.info("Finished {} at {}", getClass().getSimpleName(), finishTime);
@@ -88,4 +86,12 @@ public class StupidParallelMeLiF2 extends ParallelMeLiF {
         }
         return bestResult;
     }
+
+    @Override
+    protected CompletableFuture<SelectionResult> visitPointAsync(Point point, RunStats runStats, SelectionResult bestResult) {
+        if (visitedPoints.contains(point)) {
+            return CompletableFuture.completedFuture(bestResult);
+        }
+        return super.visitPointAsync(point, runStats, bestResult);
+    }
 }
@@ -0,0 +1,50 @@
+package ru.ifmo.ctddev.isaev.results;
+
+import java.time.Duration;
+
+
+/**
+ * Limits of a single run: wall-clock time, number of evaluated points and number of classifier trainings.
+ * Run is stopped before the next fold once any limit is reached, so the limit should allow at least one
+ * full evaluation for the run to have a result
+ *
+ * @author iisaev
+ */
+public class RunBudget {
+    public static final RunBudget UNLIMITED = new RunBudget(null, Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final Duration timeLimit;
+
+    private final long maxEvaluations;
+
+    private final long maxTrainings;
+
+    /**
+     * @param timeLimit null if time is not limited
+     */
+    public RunBudget(Duration timeLimit, long maxEvaluations, long maxTrainings) {
+        if (maxEvaluations < 1 || maxTrainings < 1 || (timeLimit != null && timeLimit.isNegative())) {
+            throw new IllegalArgumentException("Budget limits should be positive");
+        }
+        this.timeLimit = timeLimit;
+        this.maxEvaluations = maxEvaluations;
+        this.maxTrainings = maxTrainings;
+    }
+
+    public RunBudget(Duration timeLimit) {
+        this(timeLimit, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    public Duration getTimeLimit() {
+        return timeLimit;
+    }
+
+    public long getMaxEvaluations() {
+        return maxEvaluations;
+    }
+
+    public long getMaxTrainings() {
+        return maxTrainings;
+    }
+
+}
@@ -10,6 +10,9 @@ import ru.ifmo.ctddev.isaev.RelevanceMeasure;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -26,8 +29,12 @@ public class RunStats implements Comparable<RunStats> {
 
     private final int instanceCount;
 
+    /**
+     * @return score of the best result per second of work; 0 if no point was evaluated fully
+     */
     public double getScore() {
-        return getBestResult().getScore() / workTime;
+        SelectionResult bestResult = getBestResult();
+        return bestResult == null ? 0.0 : bestResult.getScore() / workTime;
     }
 
     private final Classifiers usedClassifier;
@@ -38,7 +45,22 @@ public class RunStats implements Comparable<RunStats> {
 
     private LocalDateTime finishTime;
 
+    private final RunBudget budget;
+
+    private final long deadlineNanos;
+
+    private final AtomicLong trainings = new AtomicLong();
+
+    private volatile boolean cancelled;
+
     public RunStats(@NotNull AlgorithmConfig config, @NotNull DataSet dataSet, @NotNull String algorithmName) {
+        this(config, dataSet, algorithmName, RunBudget.UNLIMITED);
+    }
+
+    public RunStats(@NotNull AlgorithmConfig config, @NotNull DataSet dataSet, @NotNull String algorithmName,
+                    @NotNull RunBudget budget) {
+        this.budget = budget;
+        this.deadlineNanos = budget.getTimeLimit() == null ? 0 : System.nanoTime() + budget.getTimeLimit().toNanos();
         this.measures = config.getMeasures();
         this.usedClassifier = config.getFoldsEvaluator().getClassifiers();
         this.dataSetName = dataSet.getName();
@@ -100,6 +122,10 @@ public class RunStats implements Comparable<RunStats> {
         private volatile int visitedPoints;
 
         private volatile int noImprove = 0;
+
+        private volatile int prunedPoints = 0;
+
+        private volatile int lowFidelityPoints = 0;
     }
 
     private final StatsHolder holder = new StatsHolder();
@@ -112,15 +138,112 @@ public class RunStats implements Comparable<RunStats> {
         return holder.visitedPoints;
     }
 
+    /**
+     * @return number of visited points whose evaluation was stopped early
+     */
+    public long getPrunedPoints() {
+        return holder.prunedPoints;
+    }
+
+    /**
+     * @return number of evaluations at lower fidelity; they are not counted as visited points
+     */
+    public long getLowFidelityPoints() {
+        return holder.lowFidelityPoints;
+    }
+
+    public RunBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return number of classifier trainings started within the run
+     */
+    public long getTrainings() {
+        return trainings.get();
+    }
+
+    /**
+     * Stops the run: folds not started yet are skipped, and algorithms return the best result found so far
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true if the run is cancelled or any limit of its budget is reached
+     */
+    public boolean isStopped() {
+        if (cancelled) {
+            return true;
+        }
+        if (budget.getTimeLimit() != null && System.nanoTime() - deadlineNanos >= 0
+                || holder.visitedPoints >= budget.getMaxEvaluations()
+                || trainings.get() >= budget.getMaxTrainings()) {
+            cancelled = true;
+        }
+        return cancelled;
+    }
+
+    /**
+     * Counts a classifier training if the run is not stopped
+     *
+     * @return false if the run is stopped and the training should be skipped
+     */
+    public boolean tryStartTraining() {
+        if (isStopped()) {
+            return false;
+        }
+        if (trainings.incrementAndGet() > budget.getMaxTrainings()) {
+            cancelled = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the latch, but not past the deadline of the budget; the run is stopped when the deadline passes
+     */
+    public void await(CountDownLatch latch) throws InterruptedException {
+        if (budget.getTimeLimit() == null) {
+            latch.await();
+        } else if (!latch.await(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+            cancel();
+        }
+    }
+
     public void updateBestResult(SelectionResult bestResult) {
         synchronized (holder) {
             updateBestResultUnsafe(bestResult);
         }
     }
 
+    /**
+     * Takes the result as the best one if it is better, without counting a visited point;
+     * used for results evaluated earlier or for another run
+     */
+    public void offerBestResult(SelectionResult result) {
+        if (!result.isFullFidelity() || result.isPruned()) {
+            return;
+        }
+        synchronized (holder) {
+            if (holder.bestResult == null || holder.bestResult.compareTo(result) == -1) {
+                holder.bestResult = result;
+            }
+        }
+    }
+
     private void updateBestResultUnsafe(SelectionResult bestResult) {
+        if (!bestResult.isFullFidelity()) {
+            ++holder.lowFidelityPoints;
+            return; // the point is evaluated fully if it is promoted
+        }
         ++holder.visitedPoints;
         ++holder.noImprove;
+        if (bestResult.isPruned()) {
+            ++holder.prunedPoints;
+            return; // score of pruned result is only an upper bound
+        }
         if (holder.bestResult != null) {
             if (holder.bestResult.compareTo(bestResult) == -1) {
                 holder.bestResult = bestResult;
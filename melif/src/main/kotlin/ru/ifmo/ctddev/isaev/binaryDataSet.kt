@@ -0,0 +1,103 @@
+package ru.ifmo.ctddev.isaev
+
+import java.io.*
+import java.nio.ByteBuffer
+import java.nio.IntBuffer
+import java.nio.channels.FileChannel
+import java.util.*
+
+/**
+ * Dataset stored in a binary file that is mapped to memory read-only.
+ * Feature values are read from the mapping without copying, so processes mapping the same file share its pages
+ * and nothing is parsed.
+ *
+ * File is [MAGIC], [VERSION], feature and instance counts, dataset name, feature names, classes
+ * and values of each feature, all as big-endian ints; a string is its length and UTF-8 bytes
+ *
+ * @author iisaev
+ */
+object BinaryDataSet {
+    private const val MAGIC = 0x4d4c4453 // "MLDS"
+
+    private const val VERSION = 1
+
+    @JvmStatic
+    fun write(dataSet: FeatureDataSet, file: File) {
+        DataOutputStream(BufferedOutputStream(FileOutputStream(file))).use { output ->
+            output.writeInt(MAGIC)
+            output.writeInt(VERSION)
+            output.writeInt(dataSet.getFeatureCount())
+            output.writeInt(dataSet.getInstanceCount())
+            writeString(output, dataSet.name)
+            dataSet.features.forEach { writeString(output, it.name) }
+            dataSet.classValues.forEach { output.writeInt(it) }
+            dataSet.features.forEach { feature -> feature.values.forEach { output.writeInt(it) } }
+        }
+    }
+
+    @JvmStatic
+    fun map(file: File): FeatureDataSet {
+        val buffer = RandomAccessFile(file, "r").use {
+            it.channel.map(FileChannel.MapMode.READ_ONLY, 0, it.length())
+        }
+        if (buffer.int != MAGIC) {
+            throw IllegalArgumentException("File $file is not a binary dataset")
+        }
+        val version = buffer.int
+        if (version != VERSION) {
+            throw IllegalArgumentException("Unsupported binary dataset version $version")
+        }
+        val featureCount = buffer.int
+        val instanceCount = buffer.int
+        val name = readString(buffer)
+        val names = List(featureCount, { readString(buffer) })
+        val values = buffer.slice().asIntBuffer()
+        val classes = MappedColumn(values, 0, instanceCount)
+        val features = names.mapIndexed { i, featureName ->
+            MappedFeature(featureName, MappedColumn(values, (i + 1) * instanceCount, instanceCount))
+        }
+        return FeatureDataSet(features, classes, name)
+    }
+
+    private fun writeString(output: DataOutputStream, value: String) {
+        val bytes = value.toByteArray(Charsets.UTF_8)
+        output.writeInt(bytes.size)
+        output.write(bytes)
+    }
+
+    private fun readString(buffer: ByteBuffer): String {
+        val bytes = ByteArray(buffer.int)
+        buffer.get(bytes)
+        return String(bytes, Charsets.UTF_8)
+    }
+
+    /**
+     * Values read by absolute index, so the list can be shared by threads
+     */
+    private class MappedColumn(private val values: IntBuffer,
+                               private val offset: Int,
+                               override val size: Int) : AbstractList<Int>(), RandomAccess {
+        override fun get(index: Int): Int {
+            if (index < 0 || index >= size) {
+                throw IndexOutOfBoundsException("Index $index, size $size")
+            }
+            return values.get(offset + index)
+        }
+
+        fun copy(): IntArray {
+            val result = IntArray(size)
+            val view = values.duplicate()
+            view.position(offset)
+            view.get(result)
+            return result
+        }
+    }
+
+    /**
+     * Column is copied from the mapping on each access and not kept, so the dataset stays in the page cache only
+     */
+    private class MappedFeature(name: String, private val mapped: MappedColumn) : Feature(name, mapped) {
+        override val column: IntArray
+            get() = mapped.copy()
+    }
+}
@@ -12,34 +12,63 @@ import weka.classifiers.trees.J48
 import weka.classifiers.trees.LMT
 import weka.classifiers.trees.RandomForest
 import weka.core.Attribute
+import weka.core.BatchPredictor
 import weka.core.DenseInstance
 import weka.core.Instance
 import weka.core.Instances
-import java.math.BigInteger
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * @author iisaev
  */
-private val random = Random()
+private val headers = ConcurrentHashMap<Int, Instances>()
 
-fun nextAttrName(): String {
-    return BigInteger(130, random).toString(32).substring(0, 8)
+private val CLASS_VALUES = Arrays.asList("0", "1")
+
+/**
+ * @return empty dataset with nominal class attribute at index 0 followed by [featureCount] numeric attributes;
+ * header is shared between all datasets of the same width, copy it before adding instances
+ */
+fun getHeader(featureCount: Int): Instances {
+    return headers.computeIfAbsent(featureCount) {
+        val attrInfo = ArrayList<Attribute>(featureCount + 1)
+        attrInfo.add(Attribute("Classes", CLASS_VALUES))
+        (1..featureCount).forEach { attrInfo.add(Attribute("f$it")) }
+        val header = Instances("header", attrInfo, 0)
+        header.setClassIndex(0)
+        header
+    }
 }
 
 fun toInstances(ds: InstanceDataSet): Instances {
-    val attrInfo = ArrayList<Attribute>()
-    attrInfo.add(Attribute("Classes", Arrays.asList("0", "1")))
-    ds.instances[0].values.forEach { attrInfo.add(Attribute(nextAttrName())) }
-    val result = Instances(ds.name, attrInfo, ds.instances.size)
-    result.setClassIndex(0)
+    val result = Instances(getHeader(ds.getFeatureCount()), ds.instances.size)
+    result.setRelationName(ds.name)
     ds.instances.forEach { inst ->
-        val instance = DenseInstance(inst.values.size + 1)
-        instance.setDataset(result)
-        instance.setValue(0, inst.clazz.toString())
+        val values = DoubleArray(inst.values.size + 1)
+        values[0] = inst.clazz.toDouble()
         (0 until inst.values.size)
-                .forEach { instance.setValue(it + 1, inst.values[it].toDouble()) }
-        result.add(instance)
+                .forEach { values[it + 1] = inst.values[it].toDouble() }
+        result.add(DenseInstance(1.0, values))
+    }
+    return result
+}
+
+/**
+ * Builds dataset from instances with given indices reading feature columns directly
+ */
+fun toInstances(ds: FeatureDataSet, instanceIndices: IntArray): Instances {
+    val result = Instances(getHeader(ds.getFeatureCount()), instanceIndices.size)
+    result.setRelationName(ds.name)
+    val classes = ds.classValues
+    val columns = ds.features.map { it.column }
+    instanceIndices.forEach { i ->
+        val values = DoubleArray(columns.size + 1)
+        values[0] = classes[i].toDouble()
+        for (f in columns.indices) {
+            values[f + 1] = columns[f][i].toDouble()
+        }
+        result.add(DenseInstance(1.0, values))
     }
     return result
 }
@@ -54,21 +83,117 @@ fun toWekaInstance(instance: DataInstance): Instance {
 
 interface Classifier {
     fun train(trainDs: DataSet): TrainedClassifier
+
+    /**
+     * Trains on instances of [dataSet] with given indices
+     */
+    fun train(dataSet: FeatureDataSet, trainIndices: IntArray): TrainedClassifier {
+        return train(dataSet.toInstanceSet(trainIndices))
+    }
+
+    /**
+     * Switches classifier to reuse its internal objects between trainings;
+     * after that a trained classifier is valid only until the next training
+     */
+    fun reusable(): Classifier = this
+}
+
+interface TrainedClassifier {
+    fun test(testDs: DataSet): List<Double>
+
+    /**
+     * Classifies instances of [dataSet] with given indices
+     */
+    fun test(dataSet: FeatureDataSet, testIndices: IntArray): List<Double> {
+        return test(dataSet.toInstanceSet(testIndices))
+    }
+
+    /**
+     * Writes predicted classes of instances of [dataSet] with given indices to [result]
+     *
+     * @return [result]
+     */
+    fun predict(dataSet: FeatureDataSet, testIndices: IntArray, result: IntArray): IntArray {
+        val predictions = test(dataSet, testIndices)
+        for (i in testIndices.indices) {
+            result[i] = Math.round(predictions[i]).toInt()
+        }
+        return result
+    }
+
+    /**
+     * Counts predictions for instances of [dataSet] with given indices in [matrix],
+     * with probabilities of class 1 if the learner gives them
+     *
+     * @return [matrix]
+     */
+    fun addPredictions(dataSet: FeatureDataSet, testIndices: IntArray, matrix: ConfusionMatrix): ConfusionMatrix {
+        return matrix.add(dataSet.classValues, testIndices, predict(dataSet, testIndices, IntArray(testIndices.size)))
+    }
 }
 
-class TrainedClassifier(private val classifier: AbstractClassifier,
-                        private val wekaDataSet: Instances) {
-    fun test(testDs: DataSet): List<Double> {
+class WekaTrainedClassifier(private val classifier: AbstractClassifier,
+                            private val wekaDataSet: Instances) : TrainedClassifier {
+    override fun test(testDs: DataSet): List<Double> {
         return testDs.toInstanceSet().instances
                 .map { toWekaInstance(it) }
                 .onEach { it.setDataset(wekaDataSet) }
-                .map { wekaInstance ->
-                    try {
-                        classifier.classifyInstance(wekaInstance)
-                    } catch (e: Exception) {
-                        throw IllegalArgumentException("Given dataset is not valid", e)
-                    }
-                }
+                .map { classify(it) }
+    }
+
+    override fun test(dataSet: FeatureDataSet, testIndices: IntArray): List<Double> {
+        return toTestInstances(dataSet, testIndices)
+                .map { classify(it) }
+    }
+
+    override fun predict(dataSet: FeatureDataSet, testIndices: IntArray, result: IntArray): IntArray {
+        val instances = toTestInstances(dataSet, testIndices)
+        if (classifier is BatchPredictor) {
+            val distributions = try {
+                classifier.distributionsForInstances(instances)
+            } catch (e: Exception) {
+                throw IllegalArgumentException("Given dataset is not valid", e)
+            }
+            distributions.forEachIndexed { i, distribution ->
+                result[i] = if (distribution[1] > distribution[0]) 1 else 0
+            }
+        } else {
+            instances.forEachIndexed { i, instance -> result[i] = Math.round(classify(instance)).toInt() }
+        }
+        return result
+    }
+
+    override fun addPredictions(dataSet: FeatureDataSet, testIndices: IntArray, matrix: ConfusionMatrix): ConfusionMatrix {
+        val instances = toTestInstances(dataSet, testIndices)
+        val distributions = try {
+            if (classifier is BatchPredictor) {
+                classifier.distributionsForInstances(instances)
+            } else {
+                Array(instances.size, { classifier.distributionForInstance(instances[it]) })
+            }
+        } catch (e: Exception) {
+            throw IllegalArgumentException("Given dataset is not valid", e)
+        }
+        val classes = dataSet.classValues
+        distributions.forEachIndexed { i, distribution ->
+            matrix.add(classes[testIndices[i]], if (distribution[1] > distribution[0]) 1 else 0, distribution[1])
+        }
+        return matrix
+    }
+
+    private fun toTestInstances(dataSet: FeatureDataSet, testIndices: IntArray): Instances {
+        if (dataSet.getFeatureCount() != wekaDataSet.numAttributes() - 1) {
+            throw IllegalArgumentException("Given dataset is not valid")
+        }
+        return toInstances(dataSet, testIndices)
+    }
+
+    private fun classify(wekaInstance: Instance): Double {
+        try {
+            return classifier.classifyInstance(wekaInstance)
+        } catch (e: Exception) {
+            throw IllegalArgumentException("Given dataset is not valid", e)
+        }
     }
 }
 
@@ -76,12 +201,40 @@ sealed class WekaClassifier : Classifier {
 
     protected abstract fun createClassifier(): AbstractClassifier
 
+    private var reuseLearner = false
+
+    private var learner: AbstractClassifier? = null
+
+    override fun reusable(): Classifier {
+        reuseLearner = true
+        return this
+    }
+
+    /**
+     * Weka learners drop their previous model in buildClassifier, so a configured learner can be trained again
+     */
+    private fun getLearner(): AbstractClassifier {
+        if (!reuseLearner) {
+            return createClassifier()
+        }
+        val result = learner ?: createClassifier()
+        learner = result
+        return result
+    }
+
     override fun train(trainDs: DataSet): TrainedClassifier {
+        return train(toInstances(trainDs.toInstanceSet()))
+    }
+
+    override fun train(dataSet: FeatureDataSet, trainIndices: IntArray): TrainedClassifier {
+        return train(toInstances(dataSet, trainIndices))
+    }
+
+    private fun train(instances: Instances): TrainedClassifier {
         try {
-            val instances = toInstances(trainDs.toInstanceSet())
-            val classifier = createClassifier()
+            val classifier = getLearner()
             classifier.buildClassifier(instances)
-            return TrainedClassifier(classifier, instances)
+            return WekaTrainedClassifier(classifier, instances)
         } catch (e: Exception) {
             throw IllegalArgumentException("Failed to train on given dataset", e)
         }
@@ -117,7 +270,11 @@ class WekaPART : WekaClassifier() {
 }
 
 class WekaRandomForest : WekaClassifier() {
-    override fun createClassifier(): AbstractClassifier = RandomForest()
+    override fun createClassifier(): AbstractClassifier {
+        val classifier = RandomForest()
+        classifier.numExecutionSlots = ComputeBudget.getQuota(ComputeBudget.Layer.LEARNER)
+        return classifier
+    }
 }
 
 class WekaSVM : WekaClassifier() {
@@ -132,25 +289,27 @@ class WekaNaiveBayes : WekaClassifier() {
     override fun createClassifier(): AbstractClassifier = NaiveBayes()
 }
 
-enum class Classifiers(private val typeToken: Class<out Classifier>) {
-    HOEFD(WekaHoeffdingTree::class.java),
-    J48(WekaJ48::class.java),
-    KNN(WekaKNN::class.java),
-    LMT(WekaLMT::class.java),
-    PERCEPTRON(WekaMultilayerPerceptron::class.java),
-    PART(WekaPART::class.java),
-    RAND_FOREST(WekaRandomForest::class.java),
-    SVM(WekaSVM::class.java),
-    NAIVE_BAYES(WekaNaiveBayes::class.java);
+enum class Classifiers(private val factory: () -> Classifier) {
+    HOEFD({ WekaHoeffdingTree() }),
+    J48({ WekaJ48() }),
+    KNN({ WekaKNN() }),
+    LMT({ WekaLMT() }),
+    PERCEPTRON({ WekaMultilayerPerceptron() }),
+    PART({ WekaPART() }),
+    RAND_FOREST({ WekaRandomForest() }),
+    SVM({ WekaSVM() }),
+    NAIVE_BAYES({ WekaNaiveBayes() }),
+    LINEAR_SVM({ LinearSvm() }),
+    DISCRETE_NAIVE_BAYES({ DiscreteNaiveBayes() }),
+    INCREMENTAL_KNN({ IncrementalKnn() }),
+    GRAM_SVM({ GramSvm() });
 
-    fun newClassifier(): Classifier {
-        try {
-            return typeToken.newInstance()
-        } catch (e: InstantiationException) {
-            throw IllegalStateException("Failed to instantiate ru.ifmo.ctddev.isaev.Classifier")
-        } catch (e: IllegalAccessException) {
-            throw IllegalStateException("Failed to instantiate ru.ifmo.ctddev.isaev.Classifier")
-        }
+    private val pool = ThreadLocal.withInitial { factory().reusable() }
 
-    }
-}
\ No newline at end of file
+    fun newClassifier(): Classifier = factory()
+
+    /**
+     * @return classifier of the calling thread; classifier it trains is valid only until the next training on this thread
+     */
+    fun pooledClassifier(): Classifier = pool.get()
+}
@@ -0,0 +1,200 @@
+package ru.ifmo.ctddev.isaev
+
+import org.slf4j.LoggerFactory
+import java.util.*
+import java.util.concurrent.*
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Single pool of threads shared by all parallel layers of feature selection.
+ * Each layer has a quota of simultaneously running tasks; tasks over quota wait in the layer queue
+ * without occupying a thread, and threads blocked in [await] are compensated by the pool,
+ * so nested parallelism saturates cores without oversubscribing them
+ *
+ * @author iisaev
+ */
+object ComputeBudget {
+    private val logger = LoggerFactory.getLogger(ComputeBudget::class.java)
+
+    enum class Layer {
+        /**
+         * Points evaluated concurrently by search algorithms
+         */
+        SEARCH,
+        /**
+         * Threads of a single multithreaded learner
+         */
+        LEARNER
+    }
+
+    @Volatile
+    private var parallelism = Runtime.getRuntime().availableProcessors()
+
+    private val quotas = EnumMap<Layer, Int>(Layer::class.java)
+
+    init {
+        quotas[Layer.SEARCH] = parallelism
+        quotas[Layer.LEARNER] = 1
+    }
+
+    private var pool: ForkJoinPool? = null
+
+    private val layerQueues = EnumMap<Layer, LayerQueue>(Layer::class.java)
+
+    /**
+     * Sets size of the shared pool and layer quotas; should be called before the first task is submitted.
+     * Folds have no quota of their own: they are forked in the shared pool and bounded by its size
+     */
+    @JvmStatic
+    @Synchronized
+    fun configure(parallelism: Int, searchQuota: Int, learnerQuota: Int) {
+        if (pool != null) {
+            throw IllegalStateException("Compute budget is already in use")
+        }
+        if (parallelism < 1 || searchQuota < 1 || learnerQuota < 1) {
+            throw IllegalArgumentException("Parallelism and quotas should be positive")
+        }
+        this.parallelism = parallelism
+        quotas[Layer.SEARCH] = searchQuota
+        quotas[Layer.LEARNER] = learnerQuota
+    }
+
+    @JvmStatic
+    @Synchronized
+    fun getParallelism(): Int = parallelism
+
+    @JvmStatic
+    @Synchronized
+    fun getQuota(layer: Layer): Int = quotas[layer]!!
+
+    /**
+     * @return executor running tasks of given layer in the shared pool; shutting it down does not affect the pool
+     */
+    @JvmStatic
+    fun newExecutor(layer: Layer): ExecutorService = LayerExecutor(getLayerQueue(layer))
+
+    /**
+     * Waits for the latch; if called from the shared pool, the pool starts a spare thread meanwhile
+     */
+    @JvmStatic
+    fun await(latch: CountDownLatch) {
+        ForkJoinPool.managedBlock(object : ForkJoinPool.ManagedBlocker {
+            override fun block(): Boolean {
+                latch.await()
+                return true
+            }
+
+            override fun isReleasable(): Boolean = latch.count == 0L
+        })
+    }
+
+    /**
+     * @return the shared pool; tasks submitted directly are not limited by layer quotas
+     */
+    @JvmStatic
+    @Synchronized
+    fun getPool(): ForkJoinPool {
+        return pool ?: ForkJoinPool(parallelism).also {
+            logger.info("Started shared pool of {} threads with quotas {}", parallelism, quotas)
+            pool = it
+        }
+    }
+
+    @Synchronized
+    private fun getLayerQueue(layer: Layer): LayerQueue {
+        return layerQueues.getOrPut(layer, { LayerQueue(getPool(), quotas[layer]!!) })
+    }
+
+    private class LayerQueue(private val pool: ForkJoinPool,
+                             private val quota: Int) {
+        private val queue = ConcurrentLinkedQueue<Runnable>()
+
+        private val running = AtomicInteger()
+
+        fun submit(task: Runnable) {
+            queue.add(task)
+            drain()
+        }
+
+        private fun drain() {
+            while (!queue.isEmpty()) {
+                val current = running.get()
+                if (current >= quota) {
+                    return
+                }
+                if (!running.compareAndSet(current, current + 1)) {
+                    continue
+                }
+                val task = queue.poll()
+                if (task == null) {
+                    running.decrementAndGet()
+                    continue
+                }
+                pool.execute {
+                    try {
+                        task.run()
+                    } finally {
+                        running.decrementAndGet()
+                        drain()
+                    }
+                }
+            }
+        }
+    }
+
+    private class LayerExecutor(private val layerQueue: LayerQueue) : AbstractExecutorService() {
+        private val lock = Object()
+
+        private var shutdown = false
+
+        private var active = 0
+
+        override fun execute(command: Runnable) {
+            synchronized(lock) {
+                if (shutdown) {
+                    throw RejectedExecutionException("Executor is shut down")
+                }
+                ++active
+            }
+            layerQueue.submit(Runnable {
+                try {
+                    command.run()
+                } finally {
+                    synchronized(lock) {
+                        --active
+                        lock.notifyAll()
+                    }
+                }
+            })
+        }
+
+        override fun shutdown() {
+            synchronized(lock) {
+                shutdown = true
+            }
+        }
+
+        override fun shutdownNow(): List<Runnable> {
+            shutdown()
+            return emptyList()
+        }
+
+        override fun isShutdown(): Boolean = synchronized(lock) { shutdown }
+
+        override fun isTerminated(): Boolean = synchronized(lock) { shutdown && active == 0 }
+
+        override fun awaitTermination(timeout: Long, unit: TimeUnit): Boolean {
+            val deadline = System.nanoTime() + unit.toNanos(timeout)
+            synchronized(lock) {
+                while (!(shutdown && active == 0)) {
+                    val left = deadline - System.nanoTime()
+                    if (left <= 0) {
+                        return false
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(lock, left)
+                }
+                return true
+            }
+        }
+    }
+}
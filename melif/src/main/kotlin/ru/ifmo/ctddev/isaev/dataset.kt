@@ -14,6 +14,11 @@ abstract class DataSet(val name: String) {
     abstract fun toFeatureSet(): FeatureDataSet
 
     abstract fun toInstanceSet(): InstanceDataSet
+
+    /**
+     * @return dataset consisting of instances with given indices in given order
+     */
+    abstract fun toInstanceSet(instanceIndices: IntArray): InstanceDataSet
 }
 
 
@@ -33,6 +38,23 @@ open class Feature(val name: String,
 
     constructor(values: List<Int>) : this("", values)
 
+    /**
+     * Unboxed copy of [values]
+     */
+    open val column: IntArray
+        get() {
+            val cached = columnCache
+            if (cached != null) {
+                return cached
+            }
+            val result = values.toIntArray()
+            columnCache = result
+            return result
+        }
+
+    @Volatile
+    private var columnCache: IntArray? = null
+
     override fun toString() = name
 }
 
@@ -41,6 +63,11 @@ class FeatureDataSet(unSortedFeatures: List<Feature>,
                      name: String) : DataSet(name) {
     val features = unSortedFeatures.sortedBy { it.name }
 
+    /**
+     * Unboxed copy of [classes]
+     */
+    val classValues: IntArray = classes.toIntArray()
+
     init {
         if (!classes.stream().allMatch { i -> i == 0 || i == 1 }) {
             throw IllegalArgumentException("All classes values should be 0 or 1")
@@ -64,6 +91,16 @@ class FeatureDataSet(unSortedFeatures: List<Feature>,
         return InstanceDataSet(instances)
     }
 
+    override fun toInstanceSet(instanceIndices: IntArray): InstanceDataSet {
+        val instances = ArrayList<DataInstance>(instanceIndices.size)
+        instanceIndices.forEach {
+            val values = ArrayList<Int>(features.size)
+            features.forEach { feature -> values.add(feature.values[it]) }
+            instances.add(DataInstance("instance ${it + 1}", classes[it], values))
+        }
+        return InstanceDataSet(instances)
+    }
+
     fun take(size: Int): FeatureDataSet {
         return FeatureDataSet(features.take(size), classes, name)
     }
@@ -93,6 +130,10 @@ class InstanceDataSet(val instances: List<DataInstance>) : DataSet("") {
         return this
     }
 
+    override fun toInstanceSet(instanceIndices: IntArray): InstanceDataSet {
+        return InstanceDataSet(instanceIndices.map { instances[it] })
+    }
+
     override fun getFeatureCount(): Int {
         return instances[0].values.size
     }
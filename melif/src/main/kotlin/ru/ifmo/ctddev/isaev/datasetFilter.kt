@@ -20,6 +20,12 @@ fun DoubleArray.normalize(min: Double, max: Double) {
 class DataSetEvaluator(private val normMode: NormalizationMode) {
     constructor() : this(NormalizationMode.VALUE_BASED)
 
+    private val evaluatedMeasures = object : LinkedHashMap<EvaluatedMeasuresKey, Lazy<List<DoubleArray>>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<EvaluatedMeasuresKey, Lazy<List<DoubleArray>>>?): Boolean {
+            return size > EVALUATED_MEASURES_CACHE_SIZE
+        }
+    }
+
     private fun evaluateMeasuresHelper(original: FeatureDataSet,
                                        measures: Array<out RelevanceMeasure>): List<DoubleArray> {
         return measures.map { m ->
@@ -33,6 +39,19 @@ class DataSetEvaluator(private val normMode: NormalizationMode) {
         }
     }
 
+    /**
+     * Measures do not depend on point, so they are evaluated once per dataset and reused by all threads
+     */
+    private fun getEvaluatedMeasures(original: FeatureDataSet,
+                                     measures: Array<out RelevanceMeasure>): List<DoubleArray> {
+        val evaluated = synchronized(evaluatedMeasures) {
+            evaluatedMeasures.getOrPut(EvaluatedMeasuresKey(original, measures.toList())) {
+                lazy { evaluateMeasuresHelper(original, measures) }
+            }
+        }
+        return evaluated.value
+    }
+
     private fun evaluateMeasures(original: FeatureDataSet,
                                  measureCosts: Point,
                                  vararg measures: RelevanceMeasure): List<EvaluatedFeature> {
@@ -42,12 +61,9 @@ class DataSetEvaluator(private val normMode: NormalizationMode) {
 
         val features = original.features
         val valuesForEachMeasure = evaluateMeasuresHelper(original, measures)
-        val ensembleMeasures = 0.until(features.size)
-                .map { i -> measureCosts.coordinates.zip(valuesForEachMeasure.map { it[i] }) }
-                .map { it.sumByDouble { (measureCost, measureValue) -> measureCost * measureValue } }
+        val ensembleMeasures = evaluateEnsemble(measureCosts.coordinates, valuesForEachMeasure, DoubleArray(features.size))
 
-        return features.zip(ensembleMeasures)
-                .map { (f, m) -> EvaluatedFeature(f, m) }
+        return features.mapIndexed { i, f -> EvaluatedFeature(f, ensembleMeasures[i]) }
     }
 
 
@@ -60,28 +76,61 @@ class DataSetEvaluator(private val normMode: NormalizationMode) {
                 .asSequence()
     }
 
+    /**
+     * Writes ensemble measures of all features to [EvaluationContext.ensembleScores]
+     * and sorts [EvaluationContext.featureIndices] by them in ascending order, first [count] only
+     *
+     * @return context of the calling thread
+     */
+    fun rankFeatures(original: FeatureDataSet,
+                     measureCosts: Point,
+                     measures: Array<out RelevanceMeasure>,
+                     count: Int): EvaluationContext {
+        if (measureCosts.coordinates.size != measures.size) {
+            throw IllegalArgumentException("Number of given measures mismatch with measureCosts dimension")
+        }
+        val context = EvaluationContext.current(original.getFeatureCount())
+        evaluateEnsemble(measureCosts.coordinates, getEvaluatedMeasures(original, measures), context.ensembleScores)
+        selectFeatures(context.ensembleScores, context.featureIndices, count, false)
+        return context
+    }
+
     fun evaluateMeasures(dataSet: FeatureDataSet,
                          measures: Array<out RelevanceMeasure>): List<DoubleArray> {
         return evaluateMeasuresHelper(dataSet, measures)
     }
 }
 
+private const val EVALUATED_MEASURES_CACHE_SIZE = 16
+
+private data class EvaluatedMeasuresKey(val dataSet: FeatureDataSet,
+                                        val measures: List<RelevanceMeasure>)
+
 sealed class DataSetFilter {
 
     protected val logger: Logger = LoggerFactory.getLogger(this.javaClass)
 
+    protected val dataSetEvaluator = DataSetEvaluator()
+
     abstract fun filterDataSet(original: FeatureDataSet, measureCosts: Point,
                                measures: Array<out RelevanceMeasure>): FeatureDataSet
+
+    protected fun takeFeatures(original: FeatureDataSet, featureIndices: IntArray, count: Int): FeatureDataSet {
+        val filteredFeatures = ArrayList<Feature>(count)
+        for (i in 0 until count) {
+            filteredFeatures.add(original.features[featureIndices[i]])
+        }
+        return FeatureDataSet(filteredFeatures, original.classes, original.name)
+    }
 }
 
 class PercentFilter(private val percents: Int) : DataSetFilter() {
 
     override fun filterDataSet(original: FeatureDataSet, measureCosts: Point,
                                measures: Array<out RelevanceMeasure>): FeatureDataSet {
-        val evaluatedFeatures = DataSetEvaluator().evaluateFeatures(original, measureCosts, measures).toList()
-        val featureToSelect = (evaluatedFeatures.size.toDouble() * percents / 100).toInt()
-        val filteredFeatures = ArrayList<Feature>(evaluatedFeatures.subList(0, featureToSelect))
-        return FeatureDataSet(filteredFeatures, original.classes, original.name)
+        val featureToSelect = (original.getFeatureCount().toDouble() * percents / 100).toInt()
+        val context = dataSetEvaluator.rankFeatures(original, measureCosts, measures, featureToSelect)
+        return takeFeatures(original, context.featureIndices, featureToSelect)
     }
 
 }
@@ -94,9 +143,9 @@ class PreferredSizeFilter(val preferredSize: Int) : DataSetFilter() {
 
     override fun filterDataSet(original: FeatureDataSet, measureCosts: Point,
                                measures: Array<out RelevanceMeasure>): FeatureDataSet {
-        val filteredFeatures = DataSetEvaluator().evaluateFeatures(original, measureCosts, measures)
-                .take(preferredSize)
-        return FeatureDataSet(filteredFeatures.toList(), original.classes, original.name)
+        val featureToSelect = Math.min(preferredSize, original.getFeatureCount())
+        val context = dataSetEvaluator.rankFeatures(original, measureCosts, measures, featureToSelect)
+        return takeFeatures(original, context.featureIndices, featureToSelect)
     }
 
 }
@@ -105,27 +154,31 @@ class WyrdCuttingRuleFilter : DataSetFilter() {
 
     override fun filterDataSet(original: FeatureDataSet, measureCosts: Point,
                                measures: Array<out RelevanceMeasure>): FeatureDataSet {
-        val filteredFeatures = DataSetEvaluator().evaluateFeatures(original, measureCosts, measures)
-        val mean = filteredFeatures
-                .map({ it.measure })
-                .average()
-        val std = Math.sqrt(
-                filteredFeatures
-                        .map({ it.measure })
-                        .map { x -> Math.pow(x - mean, 2.0) }
-                        .average()
-        )
-        val inRange = filteredFeatures
-                .filter { f -> isInRange(f, mean, std) }
-                .count()
-        val result = filteredFeatures.toList().subList(0, inRange)
-        return FeatureDataSet(result, original.classes, original.name)
+        val context = dataSetEvaluator.rankFeatures(original, measureCosts, measures, original.getFeatureCount())
+        val ensembleScores = context.ensembleScores
+        var sum = 0.0
+        for (measure in ensembleScores) {
+            sum += measure
+        }
+        val mean = sum / ensembleScores.size
+        var squaredDeviations = 0.0
+        for (measure in ensembleScores) {
+            squaredDeviations += Math.pow(measure - mean, 2.0)
+        }
+        val std = Math.sqrt(squaredDeviations / ensembleScores.size)
+        var inRange = 0
+        for (measure in ensembleScores) {
+            if (isInRange(measure, mean, std)) {
+                ++inRange
+            }
+        }
+        return takeFeatures(original, context.featureIndices, inRange)
     }
 
-    private fun isInRange(feature: EvaluatedFeature,
+    private fun isInRange(measure: Double,
                           mean: Double,
                           std: Double): Boolean {
-        return feature.measure > mean - std && feature.measure < mean + std
+        return measure > mean - std && measure < mean + std
     }
 
 }
@@ -0,0 +1,107 @@
+package ru.ifmo.ctddev.isaev
+
+import java.util.*
+
+/**
+ * Naive Bayes for discrete features with Laplace smoothing.
+ * Prediction for an instance is a sum of per-feature terms log P(v | 1) - log P(v | 0), which depend only on
+ * train instances and the feature, so they are computed once per fold and feature for all instances of the dataset.
+ * Training on a cut then only looks up tables of selected features and testing sums them
+ *
+ * @author iisaev
+ */
+class DiscreteNaiveBayes : Classifier {
+
+    override fun train(trainDs: DataSet): TrainedClassifier {
+        val dataSet = trainDs.toFeatureSet()
+        return train(dataSet, IntArray(dataSet.getInstanceCount(), { it }))
+    }
+
+    override fun train(dataSet: FeatureDataSet, trainIndices: IntArray): TrainedClassifier {
+        val classes = dataSet.classValues
+        val positive = trainIndices.count { classes[it] == 1 }
+        val negative = trainIndices.size - positive
+        val prior = Math.log((positive + 1.0) / (negative + 1.0))
+        val likelihoods = dataSet.features.map { feature ->
+            val featureTables = synchronized(tables) {
+                tables.getOrPut(feature, { Collections.synchronizedMap(WeakHashMap<IntArray, FeatureLikelihoods>()) })
+            }
+            featureTables[trainIndices] ?: calculateLikelihoods(feature.column, classes, trainIndices, positive, negative)
+                    .also { featureTables[trainIndices] = it }
+        }
+        return DiscreteNaiveBayesModel(prior, likelihoods, dataSet.getInstanceCount())
+    }
+
+    private fun calculateLikelihoods(column: IntArray, classes: IntArray, trainIndices: IntArray,
+                                     positive: Int, negative: Int): FeatureLikelihoods {
+        val counts = HashMap<Int, IntArray>()
+        trainIndices.forEach { counts.getOrPut(column[it], { IntArray(2) })[classes[it]]++ }
+        val distinctValues = counts.size.toDouble()
+        val logRatios = HashMap<Int, Double>(counts.size * 2)
+        counts.forEach { value, count ->
+            logRatios[value] = Math.log((count[1] + 1) / (positive + distinctValues)) -
+                    Math.log((count[0] + 1) / (negative + distinctValues))
+        }
+        val unseen = Math.log(1 / (positive + distinctValues)) - Math.log(1 / (negative + distinctValues))
+        return FeatureLikelihoods(logRatios, unseen, DoubleArray(column.size, { logRatios[column[it]] ?: unseen }))
+    }
+
+    companion object {
+        /**
+         * Tables shared by all classifiers, by feature and train indices of a fold; both are held weakly,
+         * so tables live as long as the dataset and its fold plan. Fold plans are cached, so arrays of train indices
+         * are the same for all cuts evaluated on a fold; features of cuts are the features of the original dataset
+         */
+        private val tables = WeakHashMap<Feature, MutableMap<IntArray, FeatureLikelihoods>>()
+    }
+}
+
+/**
+ * @param logRatios log-likelihood ratio for each value of the feature among train instances
+ * @param unseen log-likelihood ratio for values not met among train instances
+ * @param instanceLogRatios log-likelihood ratio of the value in each instance of the dataset
+ */
+class FeatureLikelihoods(val logRatios: Map<Int, Double>,
+                         val unseen: Double,
+                         val instanceLogRatios: DoubleArray)
+
+class DiscreteNaiveBayesModel(private val prior: Double,
+                              val likelihoods: List<FeatureLikelihoods>,
+                              private val instanceCount: Int) : TrainedClassifier {
+
+    override fun test(testDs: DataSet): List<Double> {
+        val dataSet = testDs.toFeatureSet()
+        if (dataSet.getFeatureCount() != likelihoods.size) {
+            throw IllegalArgumentException("Given dataset is not valid")
+        }
+        val scores = DoubleArray(dataSet.getInstanceCount(), { prior })
+        dataSet.features.forEachIndexed { f, feature ->
+            val column = feature.column
+            for (i in scores.indices) {
+                scores[i] += likelihoods[f].logRatios[column[i]] ?: likelihoods[f].unseen
+            }
+        }
+        return scores.map { if (it > 0) 1.0 else 0.0 }
+    }
+
+    override fun test(dataSet: FeatureDataSet, testIndices: IntArray): List<Double> {
+        return predict(dataSet, testIndices, IntArray(testIndices.size)).map { it.toDouble() }
+    }
+
+    override fun predict(dataSet: FeatureDataSet, testIndices: IntArray, result: IntArray): IntArray {
+        if (dataSet.getFeatureCount() != likelihoods.size || dataSet.getInstanceCount() != instanceCount) {
+            throw IllegalArgumentException("Given dataset is not valid")
+        }
+        val scores = DoubleArray(testIndices.size, { prior })
+        likelihoods.forEach {
+            val table = it.instanceLogRatios
+            for (i in testIndices.indices) {
+                scores[i] += table[testIndices[i]]
+            }
+        }
+        for (i in testIndices.indices) {
+            result[i] = if (scores[i] > 0) 1 else 0
+        }
+        return result
+    }
+}
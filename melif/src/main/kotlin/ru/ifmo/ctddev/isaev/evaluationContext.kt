@@ -0,0 +1,231 @@
+package ru.ifmo.ctddev.isaev
+
+import java.util.*
+
+/**
+ * Per-thread scratch space for point evaluation.
+ * Ensemble scores and feature ranking are computed in preallocated buffers,
+ * so evaluation of a point does not allocate once buffers are sized for the dataset
+ *
+ * @author iisaev
+ */
+class EvaluationContext private constructor() {
+
+    var ensembleScores = DoubleArray(0)
+        private set
+
+    var featureIndices = IntArray(0)
+        private set
+
+    private fun resize(featureCount: Int): EvaluationContext {
+        if (ensembleScores.size != featureCount) {
+            ensembleScores = DoubleArray(featureCount)
+            featureIndices = IntArray(featureCount)
+        }
+        return this
+    }
+
+    companion object {
+        private val contexts = ThreadLocal.withInitial { EvaluationContext() }
+
+        /**
+         * @return context of the calling thread with buffers of exactly [featureCount] elements
+         */
+        @JvmStatic
+        fun current(featureCount: Int): EvaluationContext = contexts.get().resize(featureCount)
+    }
+}
+
+/**
+ * Calculates ensemble measure Σ measureCosts[m] * valuesForEachMeasure[m][f] for each feature f
+ *
+ * @param valuesForEachMeasure [number of measures x number of features]
+ * @param result buffer of [number of features] elements to write ensemble measures to
+ */
+fun evaluateEnsemble(measureCosts: DoubleArray,
+                     valuesForEachMeasure: List<DoubleArray>,
+                     result: DoubleArray): DoubleArray {
+    return evaluateEnsemble(measureCosts, valuesForEachMeasure, result, 0, result.size)
+}
+
+/**
+ * Same as [evaluateEnsemble] for features from [from] until [to].
+ * Rows of measures are read in measure-major order, four rows per pass over [result]; each pass is
+ * a contiguous multiply-add loop the JIT compiles to SIMD instructions. Products are added in order of measures,
+ * so results are exactly the same as of summation feature by feature
+ */
+fun evaluateEnsemble(measureCosts: DoubleArray,
+                     valuesForEachMeasure: List<DoubleArray>,
+                     result: DoubleArray,
+                     from: Int,
+                     to: Int): DoubleArray {
+    if (measureCosts.size != valuesForEachMeasure.size) {
+        throw IllegalArgumentException("Number of measure costs mismatch with number of measures")
+    }
+    Arrays.fill(result, from, to, 0.0)
+    var m = 0
+    while (m + 4 <= measureCosts.size) {
+        val w0 = measureCosts[m]
+        val w1 = measureCosts[m + 1]
+        val w2 = measureCosts[m + 2]
+        val w3 = measureCosts[m + 3]
+        val v0 = valuesForEachMeasure[m]
+        val v1 = valuesForEachMeasure[m + 1]
+        val v2 = valuesForEachMeasure[m + 2]
+        val v3 = valuesForEachMeasure[m + 3]
+        for (f in from until to) {
+            result[f] = result[f] + w0 * v0[f] + w1 * v1[f] + w2 * v2[f] + w3 * v3[f]
+        }
+        m += 4
+    }
+    when (measureCosts.size - m) {
+        3 -> {
+            val w0 = measureCosts[m]
+            val w1 = measureCosts[m + 1]
+            val w2 = measureCosts[m + 2]
+            val v0 = valuesForEachMeasure[m]
+            val v1 = valuesForEachMeasure[m + 1]
+            val v2 = valuesForEachMeasure[m + 2]
+            for (f in from until to) {
+                result[f] = result[f] + w0 * v0[f] + w1 * v1[f] + w2 * v2[f]
+            }
+        }
+        2 -> {
+            val w0 = measureCosts[m]
+            val w1 = measureCosts[m + 1]
+            val v0 = valuesForEachMeasure[m]
+            val v1 = valuesForEachMeasure[m + 1]
+            for (f in from until to) {
+                result[f] = result[f] + w0 * v0[f] + w1 * v1[f]
+            }
+        }
+        1 -> {
+            val w0 = measureCosts[m]
+            val v0 = valuesForEachMeasure[m]
+            for (f in from until to) {
+                result[f] = result[f] + w0 * v0[f]
+            }
+        }
+    }
+    return result
+}
+
+/**
+ * Puts indices of [count] best features to the beginning of [indices] in sorted order;
+ * ties are resolved by feature index, so the order is the same as after stable sort of features
+ *
+ * @param scores measures of features
+ * @param indices buffer of the same size as [scores]; its previous content is overwritten
+ * @param descending true if features with greater measure go first
+ */
+fun selectFeatures(scores: DoubleArray,
+                   indices: IntArray,
+                   count: Int,
+                   descending: Boolean): IntArray {
+    if (indices.size != scores.size) {
+        throw IllegalArgumentException("Indices buffer size mismatch with number of features")
+    }
+    for (i in indices.indices) {
+        indices[i] = i
+    }
+    val toSelect = Math.min(Math.max(count, 0), indices.size)
+    if (toSelect == 0) {
+        return indices
+    }
+    if (toSelect < indices.size) {
+        partition(scores, indices, toSelect, descending)
+    }
+    sortRange(scores, indices, 0, toSelect - 1, descending)
+    return indices
+}
+
+private const val INSERTION_SORT_THRESHOLD = 16
+
+private fun precedes(scores: DoubleArray, first: Int, second: Int, descending: Boolean): Boolean {
+    val cmp = if (descending) {
+        java.lang.Double.compare(scores[second], scores[first])
+    } else {
+        java.lang.Double.compare(scores[first], scores[second])
+    }
+    return cmp < 0 || (cmp == 0 && first < second)
+}
+
+private fun swap(indices: IntArray, i: Int, j: Int) {
+    val tmp = indices[i]
+    indices[i] = indices[j]
+    indices[j] = tmp
+}
+
+/**
+ * Hoare partition around median of three; returns position of the pivot
+ */
+private fun partitionRange(scores: DoubleArray, indices: IntArray, from: Int, to: Int, descending: Boolean): Int {
+    val mid = (from + to) ushr 1
+    if (precedes(scores, indices[mid], indices[from], descending)) swap(indices, mid, from)
+    if (precedes(scores, indices[to], indices[from], descending)) swap(indices, to, from)
+    if (precedes(scores, indices[to], indices[mid], descending)) swap(indices, to, mid)
+    swap(indices, mid, to - 1)
+    val pivot = indices[to - 1]
+    var i = from
+    var j = to - 1
+    while (true) {
+        do {
+            ++i
+        } while (precedes(scores, indices[i], pivot, descending))
+        do {
+            --j
+        } while (precedes(scores, pivot, indices[j], descending))
+        if (i >= j) {
+            break
+        }
+        swap(indices, i, j)
+    }
+    swap(indices, i, to - 1)
+    return i
+}
+
+private fun insertionSort(scores: DoubleArray, indices: IntArray, from: Int, to: Int, descending: Boolean) {
+    for (i in from + 1..to) {
+        val current = indices[i]
+        var j = i - 1
+        while (j >= from && precedes(scores, current, indices[j], descending)) {
+            indices[j + 1] = indices[j]
+            --j
+        }
+        indices[j + 1] = current
+    }
+}
+
+private fun sortRange(scores: DoubleArray, indices: IntArray, from: Int, to: Int, descending: Boolean) {
+    var left = from
+    var right = to
+    while (right - left >= INSERTION_SORT_THRESHOLD) {
+        val pivot = partitionRange(scores, indices, left, right, descending)
+        // recursion into the smaller part keeps stack depth logarithmic
+        if (pivot - left < right - pivot) {
+            sortRange(scores, indices, left, pivot - 1, descending)
+            left = pivot + 1
+        } else {
+            sortRange(scores, indices, pivot + 1, right, descending)
+            right = pivot - 1
+        }
+    }
+    insertionSort(scores, indices, left, right, descending)
+}
+
+/**
+ * Quickselect: after it first [count] positions contain best [count] features in arbitrary order
+ */
+private fun partition(scores: DoubleArray, indices: IntArray, count: Int, descending: Boolean) {
+    var left = 0
+    var right = indices.size - 1
+    while (right - left >= INSERTION_SORT_THRESHOLD) {
+        val pivot = partitionRange(scores, indices, left, right, descending)
+        when {
+            pivot == count || pivot == count - 1 -> return
+            pivot < count -> left = pivot + 1
+            else -> right = pivot - 1
+        }
+    }
+    insertionSort(scores, indices, left, right, descending)
+}
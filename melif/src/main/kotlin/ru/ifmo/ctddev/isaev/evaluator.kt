@@ -4,11 +4,22 @@ import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import ru.ifmo.ctddev.isaev.melif.impl.FeatureSelectionAlgorithm
 import ru.ifmo.ctddev.isaev.point.Point
+import ru.ifmo.ctddev.isaev.remote.ProcessPool
 import ru.ifmo.ctddev.isaev.results.RunStats
 import java.util.*
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.function.Supplier
 
 /**
  * @author iisaev
@@ -20,14 +31,211 @@ abstract class FoldsEvaluator(val name: String,
                               private val score: Score) {
     protected val logger: Logger = LoggerFactory.getLogger(this.javaClass)
 
+    /**
+     * If set, evaluation of a point stops as soon as mean score over folds can not exceed the best result;
+     * such points are reported as [PrunedSelectionResult]
+     */
+    @Volatile
+    var racing = false
+
+    /**
+     * Results of evaluated points, shared with other evaluators and runs having the same cache; null disables caching
+     */
+    @Volatile
+    var resultCache: SelectionResultCache? = null
+
     fun getSelectionResult(dataSet: DataSet, point: Point, stats: RunStats): SelectionResult {
         return getSelectionResult(dataSet, point, stats, stats.measures)
     }
 
-    abstract fun getSelectionResult(dataSet: DataSet, point: Point, stats: RunStats, measures: Array<out RelevanceMeasure>): SelectionResult
+    /**
+     * Returns cached result if the point was already evaluated by this evaluator, or waits for the evaluation
+     * of the point started by another thread; pruned results are not cached.
+     * Results not evaluated for [stats] may become its best result, but are not counted as visited points
+     */
+    fun getSelectionResult(dataSet: DataSet, point: Point, stats: RunStats, measures: Array<out RelevanceMeasure>): SelectionResult {
+        val cache = resultCache ?: return evaluate(dataSet, point, stats, measures)
+        var started = false
+        val future = cache.getOrStart(this, dataSet, measures, point) {
+            started = true
+            CompletableFuture.completedFuture(evaluate(dataSet, point, stats, measures))
+        }
+        val result = try {
+            future.join()
+        } catch (e: CompletionException) {
+            throw e.cause as? RuntimeException ?: e
+        }
+        if (!started) {
+            stats.offerBestResult(result)
+        }
+        return result
+    }
+
+    /**
+     * Executor of point tasks of [evaluateAsync]; the shared pool of [ComputeBudget] if not set
+     */
+    @Volatile
+    var asyncExecutor: Executor? = null
+
+    fun evaluateAsync(dataSet: DataSet, point: Point, stats: RunStats): CompletableFuture<SelectionResult> {
+        return evaluateAsync(dataSet, point, stats, stats.measures, asyncExecutor ?: ComputeBudget.getPool())
+    }
+
+    /**
+     * Non-blocking counterpart of [getSelectionResult]: the point is evaluated by tasks of [executor],
+     * see [startEvaluation]. Cancelling the returned future stops the evaluation unless other callers still wait for it
+     */
+    fun evaluateAsync(dataSet: DataSet, point: Point, stats: RunStats, measures: Array<out RelevanceMeasure>,
+                      executor: Executor): CompletableFuture<SelectionResult> {
+        val cache = resultCache ?: return startEvaluation(dataSet, point, stats, measures, executor)
+        var started = false
+        val future = cache.getOrStart(this, dataSet, measures, point) {
+            started = true
+            startEvaluation(dataSet, point, stats, measures, executor)
+        }
+        if (started) {
+            return future
+        }
+        val result = future.thenApply { result ->
+            stats.offerBestResult(result)
+            result
+        }
+        result.whenComplete { _, _ ->
+            if (result.isCancelled) {
+                future.cancel(false)
+            }
+        }
+        return result
+    }
+
+    /**
+     * Runs [evaluate] as a task of [executor]; cancelling the returned future before the task starts skips it,
+     * while a started task evaluates all folds and updates run stats.
+     * Evaluators able to stop between folds override this
+     */
+    protected open fun startEvaluation(dataSet: DataSet, point: Point, stats: RunStats, measures: Array<out RelevanceMeasure>,
+                                       executor: Executor): CompletableFuture<SelectionResult> {
+        val evaluation = CompletableFuture<SelectionResult>()
+        executor.execute {
+            if (!evaluation.isDone) {
+                try {
+                    evaluation.complete(evaluate(dataSet, point, stats, measures))
+                } catch (e: Throwable) {
+                    evaluation.completeExceptionally(e)
+                }
+            }
+        }
+        return evaluation
+    }
+
+    protected abstract fun evaluate(dataSet: DataSet, point: Point, stats: RunStats, measures: Array<out RelevanceMeasure>): SelectionResult
+
+    /**
+     * Fidelity of the first rung of [evaluateAll]; 1.0 disables multi-fidelity evaluation
+     */
+    @Volatile
+    var minFidelity = 1.0
+
+    /**
+     * Each rung of [evaluateAll] keeps 1/[halvingRate] of points and evaluates them with [halvingRate] times greater fidelity
+     */
+    @Volatile
+    var halvingRate = 3
+
+    private val subsampledFolds = ConcurrentHashMap<Double, Pair<FoldPlan, List<Fold>>>()
+
+    /**
+     * Scores the point with folds trained on a stratified [fidelity] share of their train instances;
+     * test instances are the same, so scores of one fidelity are comparable with each other.
+     * Results of fidelity below 1 are not cached, and [RunStats] does not take them as the best result
+     */
+    fun evaluateAtFidelity(dataSet: DataSet, point: Point, stats: RunStats, measures: Array<out RelevanceMeasure>,
+                           fidelity: Double): SelectionResult {
+        if (fidelity <= 0.0 || fidelity > 1.0) {
+            throw IllegalArgumentException("Fidelity should be in (0, 1]: $fidelity")
+        }
+        if (fidelity == 1.0) {
+            return getSelectionResult(dataSet, point, stats, measures)
+        }
+        val filteredDs = dataSetFilter.filterDataSet(dataSet.toFeatureSet(), point, measures)
+        val folds = getSubsampledFolds(filteredDs, fidelity)
+        val race = FoldRace(folds.size, null, score.upperBound())
+        for (fold in folds) {
+            evaluateFold(filteredDs, fold, race, stats)
+            if (race.pruned) {
+                break
+            }
+        }
+        val result = if (race.pruned) {
+            PrunedSelectionResult(filteredDs.features, point, race.upperBound(), fidelity)
+        } else {
+            logger.debug("Point {}; F1 score at fidelity {}: {}", arrayOf(point, fidelity, race.mean()))
+            LowFidelitySelectionResult(filteredDs.features, point, race.mean(), fidelity)
+        }
+        stats.updateBestResult(result)
+        return result
+    }
+
+    /**
+     * Evaluates points in successive-halving style: all points are scored at [minFidelity], the best 1/[halvingRate]
+     * of them are promoted to the next rung, and so on until the survivors are evaluated fully.
+     * Pruned points are never promoted, since their scores are only upper bounds.
+     * Points of a rung are evaluated concurrently by [asyncExecutor]
+     *
+     * @return full-fidelity results in order of points; null for points dropped at lower fidelity
+     */
+    fun evaluateAll(dataSet: DataSet, points: List<Point>, stats: RunStats): List<SelectionResult?> {
+        if (halvingRate < 2) {
+            throw IllegalStateException("Halving rate should be at least 2: $halvingRate")
+        }
+        val executor = asyncExecutor ?: ComputeBudget.getPool()
+        var rung = points.indices.toList()
+        var fidelity = minFidelity
+        while (fidelity < 1.0 && rung.size > 1 && !stats.isStopped) {
+            val rungFidelity = fidelity
+            val rungResults = rung
+                    .map { i ->
+                        CompletableFuture.supplyAsync(Supplier {
+                            evaluateAtFidelity(dataSet, points[i], stats, stats.measures, rungFidelity)
+                        }, executor)
+                    }
+                    .map { join(it) }
+            val promoted = Math.max(1, (rung.size + halvingRate - 1) / halvingRate)
+            rung = rung.indices
+                    .filter { !rungResults[it].isPruned }
+                    .sortedByDescending { rungResults[it].score }
+                    .take(promoted)
+                    .sorted()
+                    .map { rung[it] }
+            fidelity *= halvingRate
+        }
+        val results = arrayOfNulls<SelectionResult>(points.size)
+        rung.map { i -> Pair(i, evaluateAsync(dataSet, points[i], stats)) }
+                .forEach { (i, future) -> results[i] = join(future) }
+        return results.toList()
+    }
+
+    private fun join(future: CompletableFuture<SelectionResult>): SelectionResult {
+        try {
+            return future.join()
+        } catch (e: CompletionException) {
+            throw e.cause as? RuntimeException ?: e
+        }
+    }
+
+    private fun getSubsampledFolds(filteredDs: FeatureDataSet, fidelity: Double): List<Fold> {
+        val plan = dataSetSplitter.getFoldPlan(filteredDs)
+        val cached = subsampledFolds[fidelity]
+        if (cached != null && cached.first === plan) {
+            return cached.second
+        }
+        val folds = plan.folds.mapIndexed { i, fold -> fold.subsample(filteredDs.classValues, fidelity, i.toLong()) }
+        subsampledFolds[fidelity] = Pair(plan, folds)
+        return folds
+    }
 
     public fun getScore(dsPair: DataSetPair): Double {
-        val classifier = classifiers.newClassifier()
+        val classifier = classifiers.pooledClassifier()
         val trained = classifier.train(dsPair.trainSet)
         val actual = trained.test(dsPair.testSet)
                 .map { Math.round(it).toInt() }
@@ -44,22 +252,105 @@ abstract class FoldsEvaluator(val name: String,
     protected fun getScore(dataSet: DataSet,
                            point: Point, measures: Array<out RelevanceMeasure>): Double {
         val filteredDs = dataSetFilter.filterDataSet(dataSet.toFeatureSet(), point, measures)
-        val instanceDataSet = filteredDs.toInstanceSet()
-        val splits = dataSetSplitter.split(instanceDataSet)
-        val f1Scores = splits
-                .map { this.getScore(it) }
+        return getScore(filteredDs)
+    }
+
+    protected fun getScore(filteredDs: FeatureDataSet): Double {
+        val f1Scores = dataSetSplitter.getFoldPlan(filteredDs).folds
+                .map { this.getScore(filteredDs, it) }
         return f1Scores.average()
     }
+
+    /**
+     * Evaluates the fold unless the point is pruned or the run is stopped; folds of a stopped run stop the race
+     */
+    protected fun evaluateFold(filteredDs: FeatureDataSet, fold: Fold, race: FoldRace, stats: RunStats) {
+        if (race.pruned) { // folds not started before pruning are skipped
+            return
+        }
+        if (!stats.tryStartTraining()) {
+            race.stop()
+            return
+        }
+        race.add(getScore(filteredDs, fold))
+    }
+
+    protected fun startRace(folds: Int, stats: RunStats): FoldRace {
+        val threshold = if (racing) stats.bestResult?.score else null
+        return FoldRace(folds, threshold, score.upperBound())
+    }
+
+    protected fun toSelectionResult(filteredDs: FeatureDataSet, point: Point, race: FoldRace): SelectionResult {
+        return if (race.pruned) {
+            logger.debug("Point {} pruned after {} folds", point, race.finished)
+            PrunedSelectionResult(filteredDs.features, point, race.upperBound())
+        } else {
+            val f1Score = race.mean()
+            logger.debug("Point {}; F1 score: {}", point, FeatureSelectionAlgorithm.FORMAT.format(f1Score))
+            SelectionResult(filteredDs.features, point, f1Score)
+        }
+    }
+
+    /**
+     * Persistent fold scores; if set, folds found in the store are not evaluated again
+     */
+    @Volatile
+    var scoreStore: FoldScoreStore? = null
+
+    /**
+     * Child processes evaluating folds; if not set, folds are evaluated in this process
+     */
+    @Volatile
+    var processPool: ProcessPool? = null
+
+    protected fun getScore(filteredDs: FeatureDataSet, fold: Fold): Double {
+        val store = scoreStore ?: return calculateScore(filteredDs, fold)
+        val key = store.key(classifiers, score, filteredDs, fold)
+        val stored = store.get(key)
+        if (stored != null) {
+            return stored
+        }
+        val result = calculateScore(filteredDs, fold)
+        store.put(key, result)
+        return result
+    }
+
+    private fun calculateScore(filteredDs: FeatureDataSet, fold: Fold): Double {
+        val pool = processPool ?: return score.calculate(getConfusionMatrix(filteredDs, fold))
+        return pool.score(filteredDs, fold)
+    }
+
+    /**
+     * Matrix of predictions for test instances of the fold, with probabilities of class 1 if the learner gives them
+     */
+    fun getConfusionMatrix(filteredDs: FeatureDataSet, fold: Fold): ConfusionMatrix {
+        return getConfusionMatrix(classifiers, filteredDs, fold)
+    }
+}
+
+/**
+ * Trains on train instances of the fold and counts predictions for its test instances
+ */
+fun getConfusionMatrix(classifiers: Classifiers, filteredDs: FeatureDataSet, fold: Fold): ConfusionMatrix {
+    val classifier = classifiers.pooledClassifier()
+    val trained = classifier.train(filteredDs, fold.trainIndices)
+    return trained.addPredictions(filteredDs, fold.testIndices, ConfusionMatrix())
 }
 
 class SequentalEvaluator(classifiers: Classifiers, dataSetFilter: DataSetFilter, dataSetSplitter: DataSetSplitter, score: Score)
     : FoldsEvaluator("Seq", classifiers, dataSetSplitter, dataSetFilter, score) {
 
-    override fun getSelectionResult(dataSet: DataSet, point: Point, stats: RunStats, measures: Array<out RelevanceMeasure>): SelectionResult {
+    override fun evaluate(dataSet: DataSet, point: Point, stats: RunStats, measures: Array<out RelevanceMeasure>): SelectionResult {
         val filteredDs = dataSetFilter.filterDataSet(dataSet.toFeatureSet(), point, measures)
-        val f1Score = getScore(dataSet, point, measures)
-        logger.debug("Point {}; F1 score: {}", point, FeatureSelectionAlgorithm.FORMAT.format(f1Score))
-        val result = SelectionResult(filteredDs.features, point, f1Score)
+        val folds = dataSetSplitter.getFoldPlan(filteredDs).folds
+        val race = startRace(folds.size, stats)
+        for (fold in folds) {
+            evaluateFold(filteredDs, fold, race, stats)
+            if (race.pruned) {
+                break
+            }
+        }
+        val result = toSelectionResult(filteredDs, point, race)
         stats.updateBestResult(result)
         return result
     }
@@ -72,35 +363,161 @@ class ParallelEvaluator(classifiers: Classifiers, dataSetFilter: DataSetFilter,
     constructor(classifiers: Classifiers, dataSetFilter: DataSetFilter, datasetSplitter: DataSetSplitter, score: Score, threads: Int)
             : this(classifiers, dataSetFilter, datasetSplitter, Executors.newFixedThreadPool(threads), score)
 
-    override fun getSelectionResult(dataSet: DataSet, point: Point, stats: RunStats, measures: Array<out RelevanceMeasure>): SelectionResult {
+    /**
+     * Evaluates folds as fork-join tasks in the shared pool of [ComputeBudget]
+     */
+    constructor(classifiers: Classifiers, dataSetFilter: DataSetFilter, datasetSplitter: DataSetSplitter, score: Score)
+            : this(classifiers, dataSetFilter, datasetSplitter, ComputeBudget.getPool(), score)
+
+    override fun evaluate(dataSet: DataSet, point: Point, stats: RunStats, measures: Array<out RelevanceMeasure>): SelectionResult {
         val filteredDs = dataSetFilter.filterDataSet(dataSet.toFeatureSet(), point, measures)
-        val instanceDataSet = filteredDs.toInstanceSet()
-        val dataSetPairs = dataSetSplitter.split(instanceDataSet)
-        val latch = CountDownLatch(dataSetPairs.size)
-        val f1Scores = Collections.synchronizedList(ArrayList<Double>(dataSetPairs.size))
-        val futures = dataSetPairs
-                .map { ds ->
+        val folds = dataSetSplitter.getFoldPlan(filteredDs).folds
+        val race = startRace(folds.size, stats)
+        if (executorService is ForkJoinPool) {
+            evaluateForkJoin(executorService, filteredDs, folds, race, stats)
+        } else {
+            evaluateWithLatch(filteredDs, folds, race, stats)
+        }
+        val result = toSelectionResult(filteredDs, point, race)
+        stats.updateBestResult(result)
+        return result
+    }
+
+    /**
+     * Filtering is a task of [executor], folds are tasks of the evaluator's executor service;
+     * the result is assembled when the last fold completes, so no thread waits for the point.
+     * Cancelling the returned future stops evaluation before the next fold
+     */
+    override fun startEvaluation(dataSet: DataSet, point: Point, stats: RunStats, measures: Array<out RelevanceMeasure>,
+                                 executor: Executor): CompletableFuture<SelectionResult> {
+        val cancelled = AtomicBoolean()
+        val evaluation = CompletableFuture
+                .supplyAsync(Supplier {
+                    if (cancelled.get()) {
+                        throw CancellationException()
+                    }
+                    dataSetFilter.filterDataSet(dataSet.toFeatureSet(), point, measures)
+                }, executor)
+                .thenCompose { filteredDs ->
+                    val folds = dataSetSplitter.getFoldPlan(filteredDs).folds
+                    val race = startRace(folds.size, stats)
+                    val foldFutures = folds.map { fold ->
+                        CompletableFuture.runAsync(Runnable {
+                            if (!cancelled.get()) {
+                                evaluateFold(filteredDs, fold, race, stats)
+                            }
+                        }, executorService)
+                    }
+                    CompletableFuture.allOf(*foldFutures.toTypedArray())
+                            .thenApply { toSelectionResult(filteredDs, point, race) }
+                }
+                .thenApply { result ->
+                    if (cancelled.get()) {
+                        throw CancellationException()
+                    }
+                    stats.updateBestResult(result)
+                    result
+                }
+        evaluation.whenComplete { _, _ ->
+            if (evaluation.isCancelled) {
+                cancelled.set(true)
+            }
+        }
+        return evaluation
+    }
+
+    /**
+     * Folds are forked as subtasks; a worker of the pool waiting for them runs pending folds itself,
+     * so evaluation of points and folds in one pool does not block threads
+     */
+    private fun evaluateForkJoin(pool: ForkJoinPool, filteredDs: FeatureDataSet, folds: List<Fold>, race: FoldRace,
+                                 stats: RunStats) {
+        val tasks = folds.map { fold ->
+            ForkJoinTask.adapt(Runnable { evaluateFold(filteredDs, fold, race, stats) })
+        }
+        if (ForkJoinTask.getPool() === pool) {
+            ForkJoinTask.invokeAll(tasks)
+        } else {
+            pool.invoke(ForkJoinTask.adapt(Runnable { ForkJoinTask.invokeAll(tasks) }))
+        }
+    }
+
+    private fun evaluateWithLatch(filteredDs: FeatureDataSet, folds: List<Fold>, race: FoldRace, stats: RunStats) {
+        val latch = CountDownLatch(folds.size)
+        val futures = folds
+                .map { fold ->
                     executorService.submit {
-                        val score = getScore(ds)
-                        f1Scores.add(score)
-                        latch.countDown()
+                        try {
+                            evaluateFold(filteredDs, fold, race, stats)
+                        } finally {
+                            latch.countDown()
+                        }
                     }
                 }
         try {
-            latch.await()
+            ComputeBudget.await(latch)
             futures.forEach { f ->
                 if (!f.isDone) {
                     throw IllegalStateException("Task is not done after latch is released")
                 }
+                f.get()
             }
-            val f1Score = f1Scores.average()
-            logger.debug("Point $point; F1 score: $f1Score")
-            val result = SelectionResult(filteredDs.features, point, f1Score)
-            stats.updateBestResult(result)
-            return result
         } catch (e: InterruptedException) {
             throw IllegalStateException("Waiting on latch interrupted! ", e)
+        } catch (e: ExecutionException) {
+            throw IllegalStateException("Failed to evaluate fold", e.cause)
         }
 
     }
 }
+
+/**
+ * Scores of folds of one point; tells when mean score can no longer exceed [threshold]
+ *
+ * @param threshold score to beat, or null if all folds should be evaluated
+ * @param maxScore greatest possible score of a fold
+ */
+class FoldRace(private val folds: Int,
+               private val threshold: Double?,
+               private val maxScore: Double) {
+    private var sum = 0.0
+
+    var finished = 0
+        private set
+
+    @Volatile
+    var pruned = false
+        private set
+
+    /**
+     * @return false if the point is pruned
+     */
+    @Synchronized
+    fun add(score: Double): Boolean {
+        sum += score
+        ++finished
+        if (finished == folds) {
+            pruned = false // folds already running when the point was pruned completed it
+        } else if (threshold != null && upperBound() <= threshold) {
+            pruned = true
+        }
+        return !pruned
+    }
+
+    /**
+     * Prunes the point regardless of its scores; used when the run is out of budget
+     */
+    @Synchronized
+    fun stop() {
+        pruned = true
+    }
+
+    /**
+     * @return greatest mean score possible after folds evaluated so far
+     */
+    @Synchronized
+    fun upperBound(): Double = (sum + (folds - finished) * maxScore) / folds
+
+    @Synchronized
+    fun mean(): Double = sum / finished
+}
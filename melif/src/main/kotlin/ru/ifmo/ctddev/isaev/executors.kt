@@ -148,4 +148,26 @@ class PriorityExecutor(poolSize: Int, updatePrioritiesOnEachStep: Boolean)
     override fun <T> newTaskFor(runnable: Runnable, value: T): RunnableFuture<T> = fail()
 
     override fun <T> newTaskFor(callable: Callable<T>): RunnableFuture<T> = fail()
-}
\ No newline at end of file
+}
+
+/**
+ * Runs tasks in [executor], most prioritized first: each submitted task schedules one run of the most prioritized
+ * pending task, so the executor may be shared and need not order its own queue
+ */
+class PriorityTaskQueue(private val executor: ExecutorService) {
+    private val pending = PriorityBlockingQueue<PriorityFutureTask<*>>()
+
+    fun <T> submitWithPriority(task: Callable<T>, priority: Double): Future<T> {
+        val future = PriorityFutureTask(task, priority)
+        pending.add(future)
+        try {
+            executor.execute { pending.poll()?.run() }
+        } catch (e: RejectedExecutionException) {
+            pending.remove(future)
+            throw e
+        }
+        return future
+    }
+
+    fun shutdown() = executor.shutdown()
+}
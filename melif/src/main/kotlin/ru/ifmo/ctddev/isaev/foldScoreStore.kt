@@ -0,0 +1,159 @@
+package ru.ifmo.ctddev.isaev
+
+import org.slf4j.LoggerFactory
+import java.io.Closeable
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Append-only memory-mapped file of fold scores, reused between runs.
+ * Score is keyed by 128-bit hash of classifier, score function, classes, contents of selected features
+ * and train/test indices of the fold, so it is found again whenever the same cut is evaluated on the same fold.
+ *
+ * Record is [key high][key low][score][checksum], 32 bytes; the file grows by [GROWTH_RECORDS] zero records.
+ * On opening records are read until the first empty or damaged one, so a crash loses at most the records
+ * being written; next appends overwrite them
+ *
+ * @author iisaev
+ */
+class FoldScoreStore private constructor(private val file: RandomAccessFile) : Closeable {
+    private val logger = LoggerFactory.getLogger(FoldScoreStore::class.java)
+
+    private val index = ConcurrentHashMap<Key, Double>()
+
+    private var buffer: MappedByteBuffer
+
+    private var records = 0
+
+    private val featureHashes = Collections.synchronizedMap(WeakHashMap<Feature, Long>())
+
+    init {
+        val isNew = file.length() == 0L
+        val existingRecords = if (isNew) 0L else (file.length() - HEADER_SIZE) / RECORD_SIZE
+        buffer = map(Math.max(existingRecords, GROWTH_RECORDS.toLong()))
+        if (isNew) {
+            buffer.putLong(0, MAGIC)
+        } else if (buffer.getLong(0) != MAGIC) {
+            file.close()
+            throw IllegalArgumentException("Given file is not a fold score store")
+        }
+        while (records < existingRecords) {
+            val offset = offset(records)
+            val high = buffer.getLong(offset)
+            val low = buffer.getLong(offset + 8)
+            val score = buffer.getDouble(offset + 16)
+            if ((high == 0L && low == 0L) || buffer.getLong(offset + 24) != checksum(high, low, score)) {
+                break
+            }
+            index[Key(high, low)] = score
+            ++records
+        }
+        logger.info("Loaded {} fold scores", records)
+    }
+
+    val size: Int
+        get() = index.size
+
+    fun get(key: Key): Double? = index[key]
+
+    @Synchronized
+    fun put(key: Key, score: Double) {
+        if (index.putIfAbsent(key, score) != null) {
+            return
+        }
+        if (offset(records + 1) > buffer.capacity()) {
+            buffer.force()
+            buffer = map(records.toLong() + GROWTH_RECORDS)
+        }
+        val offset = offset(records)
+        buffer.putLong(offset + 8, key.low)
+        buffer.putDouble(offset + 16, score)
+        buffer.putLong(offset + 24, checksum(key.high, key.low, score))
+        buffer.putLong(offset, key.high) // non-zero high marks the record as written
+        ++records
+    }
+
+    /**
+     * @return key of the fold score of [cut] evaluated by [classifiers] with [score]
+     */
+    fun key(classifiers: Classifiers, score: Score, cut: FeatureDataSet, fold: Fold): Key {
+        val hasher = Hasher()
+        hasher.add(classifiers.name.hashCode().toLong())
+        hasher.add(score.javaClass.name.hashCode().toLong())
+        cut.classValues.forEach { hasher.add(it.toLong()) }
+        cut.features.forEach { hasher.add(featureHashes.getOrPut(it, { hashValues(it.column) })) }
+        hasher.add(fold.trainIndices.size.toLong())
+        fold.trainIndices.forEach { hasher.add(it.toLong()) }
+        fold.testIndices.forEach { hasher.add(it.toLong()) }
+        return hasher.toKey()
+    }
+
+    @Synchronized
+    override fun close() {
+        buffer.force()
+        file.close()
+    }
+
+    private fun map(capacityRecords: Long): MappedByteBuffer {
+        return file.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacityRecords * RECORD_SIZE)
+    }
+
+    private fun offset(record: Int): Int = HEADER_SIZE + record * RECORD_SIZE
+
+    private fun hashValues(values: IntArray): Long {
+        val hasher = Hasher()
+        values.forEach { hasher.add(it.toLong()) }
+        return hasher.toKey().high
+    }
+
+    class Key(val high: Long, val low: Long) {
+        override fun equals(other: Any?): Boolean = other is Key && high == other.high && low == other.low
+
+        override fun hashCode(): Int = (high xor low).toInt()
+    }
+
+    /**
+     * Two independent 64-bit hashes: FNV-1a over bytes of values and multiply-xorshift mixing
+     */
+    private class Hasher {
+        private var fnv = -0x340d631b7bdddcdbL
+
+        private var mix = 0x2545F4914F6CDD1DL
+
+        fun add(value: Long) {
+            var v = value
+            for (i in 0 until 8) {
+                fnv = (fnv xor (v and 0xFF)) * 0x100000001b3L
+                v = v ushr 8
+            }
+            mix = (mix xor value) * -0x61c8864680b583ebL
+            mix = mix xor (mix ushr 29)
+        }
+
+        fun toKey(): Key {
+            // zero high part is reserved for empty records
+            return Key(if (fnv == 0L) 1L else fnv, mix)
+        }
+    }
+
+    companion object {
+        private const val MAGIC = 0x464f4c4453434f52L // "FOLDSCOR"
+
+        private const val HEADER_SIZE = 8
+
+        private const val RECORD_SIZE = 32
+
+        private const val GROWTH_RECORDS = 1 shl 16
+
+        private fun checksum(high: Long, low: Long, score: Double): Long {
+            return (high * 31 + low) * 31 + java.lang.Double.doubleToLongBits(score) xor MAGIC
+        }
+
+        @JvmStatic
+        fun open(file: File): FoldScoreStore = FoldScoreStore(RandomAccessFile(file, "rw"))
+    }
+}
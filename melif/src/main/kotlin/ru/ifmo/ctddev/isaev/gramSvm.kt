@@ -0,0 +1,201 @@
+package ru.ifmo.ctddev.isaev
+
+import org.slf4j.LoggerFactory
+import java.util.*
+
+/**
+ * Linear SVM solved in the dual by coordinate descent over a cached Gram matrix.
+ * Features are scaled to [0, 1] on the train set and C = 1, as in [LinearSvm] and Weka SMO defaults.
+ *
+ * Gram matrix of a cut is a sum of per-feature outer products, so each thread keeps for each fold
+ * the matrix of the last evaluated cut and moves it to the next cut by adding products of new features
+ * and subtracting products of dropped ones. The solver starts from zero unless the caller passes
+ * dual variables of a previous solution, so a cut's model does not depend on what the thread trained before
+ *
+ * @author iisaev
+ */
+class GramSvm(private val c: Double = 1.0,
+              private val epsilon: Double = 1E-3,
+              private val maxIterations: Int = 1000) : Classifier {
+
+    init {
+        if (c <= 0) {
+            throw IllegalArgumentException("C should be positive")
+        }
+    }
+
+    override fun train(trainDs: DataSet): TrainedClassifier {
+        val dataSet = trainDs.toFeatureSet()
+        return train(dataSet, IntArray(dataSet.getInstanceCount(), { it }))
+    }
+
+    override fun train(dataSet: FeatureDataSet, trainIndices: IntArray): TrainedClassifier {
+        return train(dataSet, trainIndices, null)
+    }
+
+    /**
+     * @param warmStart [LinearSvmModel.alphas] of previous solution on the same train instances, is not modified
+     */
+    fun train(dataSet: FeatureDataSet, trainIndices: IntArray, warmStart: DoubleArray?): LinearSvmModel {
+        val n = trainIndices.size
+        val state = states.get().getOrPut(trainIndices, { GramState(n) })
+        val features = Collections.newSetFromMap(IdentityHashMap<Feature, Boolean>())
+        features.addAll(dataSet.features)
+        val added = features.filter { !state.features.contains(it) }
+        val removed = state.features.filter { !features.contains(it) }
+        if (added.size + removed.size >= features.size || state.updates >= MAX_INCREMENTAL_UPDATES) {
+            state.reset()
+            features.forEach { addOuterProduct(state.gram, scaledColumn(it, trainIndices), 1.0) }
+        } else {
+            added.forEach { addOuterProduct(state.gram, scaledColumn(it, trainIndices), 1.0) }
+            removed.forEach { addOuterProduct(state.gram, scaledColumn(it, trainIndices), -1.0) }
+            ++state.updates
+        }
+        state.features = features
+
+        val classes = dataSet.classValues
+        val y = DoubleArray(n, { if (classes[trainIndices[it]] == 1) 1.0 else -1.0 })
+        val alphas = if (warmStart != null && warmStart.size == n) warmStart.copyOf() else DoubleArray(n)
+        solve(state.gram, y, alphas)
+
+        // w = Σ alpha_i y_i x_i over scaled features; scaling is moved into weights and bias
+        val weights = DoubleArray(dataSet.getFeatureCount())
+        var bias = 0.0
+        for (i in 0 until n) {
+            bias += alphas[i] * y[i]
+        }
+        dataSet.features.forEachIndexed { f, feature ->
+            val column = feature.column
+            val range = Range(column, trainIndices)
+            var sum = 0.0
+            for (i in 0 until n) {
+                sum += alphas[i] * y[i] * (column[trainIndices[i]] - range.min) * range.scale
+            }
+            weights[f] = sum * range.scale
+            bias -= weights[f] * range.min
+        }
+        return LinearSvmModel(weights, bias, alphas)
+    }
+
+    private fun solve(gram: DoubleArray, y: DoubleArray, alphas: DoubleArray) {
+        val n = y.size
+        for (i in 0 until n) {
+            alphas[i] = Math.min(Math.max(alphas[i], 0.0), c)
+        }
+        // gradient of dual objective: G_i = y_i Σ_j alpha_j y_j K_ij - 1
+        val gradient = DoubleArray(n, { -1.0 })
+        for (j in 0 until n) {
+            if (alphas[j] != 0.0) {
+                val coef = alphas[j] * y[j]
+                for (i in 0 until n) {
+                    gradient[i] += y[i] * coef * gram[j * n + i]
+                }
+            }
+        }
+        val order = IntArray(n, { it })
+        val random = Random(0)
+        var iteration = 0
+        while (iteration < maxIterations) {
+            for (i in n - 1 downTo 1) {
+                val j = random.nextInt(i + 1)
+                val tmp = order[i]
+                order[i] = order[j]
+                order[j] = tmp
+            }
+            var maxPg = Double.NEGATIVE_INFINITY
+            var minPg = Double.POSITIVE_INFINITY
+            for (i in order) {
+                val g = gradient[i]
+                val pg = when {
+                    alphas[i] == 0.0 -> Math.min(g, 0.0)
+                    alphas[i] == c -> Math.max(g, 0.0)
+                    else -> g
+                }
+                maxPg = Math.max(maxPg, pg)
+                minPg = Math.min(minPg, pg)
+                val qii = gram[i * n + i]
+                if (pg != 0.0 && qii > 0) {
+                    val old = alphas[i]
+                    alphas[i] = Math.min(Math.max(old - g / qii, 0.0), c)
+                    val delta = (alphas[i] - old) * y[i]
+                    if (delta != 0.0) {
+                        for (j in 0 until n) {
+                            gradient[j] += y[j] * delta * gram[i * n + j]
+                        }
+                    }
+                }
+            }
+            ++iteration
+            if (maxPg - minPg <= epsilon) {
+                break
+            }
+        }
+        if (iteration == maxIterations) {
+            logger.debug("Gram SVM reached {} iterations without convergence", maxIterations)
+        }
+    }
+
+    private fun scaledColumn(feature: Feature, trainIndices: IntArray): DoubleArray {
+        val column = feature.column
+        val range = Range(column, trainIndices)
+        return DoubleArray(trainIndices.size, { (column[trainIndices[it]] - range.min) * range.scale })
+    }
+
+    private fun addOuterProduct(gram: DoubleArray, values: DoubleArray, sign: Double) {
+        val n = values.size
+        for (i in 0 until n) {
+            val v = sign * values[i]
+            if (v != 0.0) {
+                val row = i * n
+                for (j in 0 until n) {
+                    gram[row + j] += v * values[j]
+                }
+            }
+        }
+    }
+
+    private class Range(column: IntArray, trainIndices: IntArray) {
+        val min: Double
+
+        val scale: Double
+
+        init {
+            var min = Int.MAX_VALUE
+            var max = Int.MIN_VALUE
+            trainIndices.forEach {
+                min = Math.min(min, column[it])
+                max = Math.max(max, column[it])
+            }
+            this.min = min.toDouble()
+            this.scale = if (max > min) 1.0 / (max - min) else 0.0
+        }
+    }
+
+    private class GramState(private val n: Int) {
+        var features: Set<Feature> = emptySet()
+
+        /**
+         * [train instances x train instances], constant feature for bias included
+         */
+        val gram = DoubleArray(n * n, { 1.0 })
+
+        var updates = 0
+
+        fun reset() {
+            features = emptySet()
+            updates = 0
+            Arrays.fill(gram, 1.0)
+        }
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(GramSvm::class.java)
+
+        /**
+         * Gram matrix is recomputed from scratch after this number of updates to drop accumulated rounding error
+         */
+        private const val MAX_INCREMENTAL_UPDATES = 64
+
+        private val states = ThreadLocal.withInitial { WeakHashMap<IntArray, GramState>() }
+    }
+}
@@ -0,0 +1,161 @@
+package ru.ifmo.ctddev.isaev
+
+import java.util.*
+
+/**
+ * K nearest neighbours with Euclidean distance over features scaled by their range on train instances,
+ * as in Weka IBk (k = 1 by default).
+ *
+ * Squared distance is a sum of per-feature contributions, so each thread keeps for each fold the distance matrix
+ * [test instances x train instances] of the last evaluated cut and moves it to the next cut
+ * by adding contributions of new features and subtracting contributions of dropped ones.
+ * Neighbouring points usually differ by a few features, so evaluation cost is proportional to the cut delta
+ *
+ * @author iisaev
+ */
+class IncrementalKnn(private val k: Int = 1) : Classifier {
+
+    init {
+        if (k < 1) {
+            throw IllegalArgumentException("Number of neighbours should be positive")
+        }
+    }
+
+    override fun train(trainDs: DataSet): TrainedClassifier {
+        val dataSet = trainDs.toFeatureSet()
+        return train(dataSet, IntArray(dataSet.getInstanceCount(), { it }))
+    }
+
+    override fun train(dataSet: FeatureDataSet, trainIndices: IntArray): TrainedClassifier {
+        return IncrementalKnnModel(dataSet, trainIndices, k)
+    }
+}
+
+class IncrementalKnnModel(private val trainDs: FeatureDataSet,
+                          private val trainIndices: IntArray,
+                          private val k: Int) : TrainedClassifier {
+
+    override fun test(testDs: DataSet): List<Double> {
+        val dataSet = testDs.toFeatureSet()
+        if (dataSet.getFeatureCount() != trainDs.getFeatureCount()) {
+            throw IllegalArgumentException("Given dataset is not valid")
+        }
+        val testIndices = IntArray(dataSet.getInstanceCount(), { it })
+        val distances = DoubleArray(testIndices.size * trainIndices.size)
+        trainDs.features.forEachIndexed { f, feature ->
+            addContribution(distances, feature.column, dataSet.features[f].column, testIndices, 1.0)
+        }
+        return classify(distances, testIndices.size, IntArray(testIndices.size)).map { it.toDouble() }
+    }
+
+    override fun test(dataSet: FeatureDataSet, testIndices: IntArray): List<Double> {
+        return predict(dataSet, testIndices, IntArray(testIndices.size)).map { it.toDouble() }
+    }
+
+    override fun predict(dataSet: FeatureDataSet, testIndices: IntArray, result: IntArray): IntArray {
+        if (dataSet !== trainDs && dataSet.getFeatureCount() != trainDs.getFeatureCount()) {
+            throw IllegalArgumentException("Given dataset is not valid")
+        }
+        val state = states.get().getOrPut(trainIndices, { DistanceState() })
+        if (state.testIndices !== testIndices) {
+            state.reset(testIndices, trainIndices.size)
+        }
+        val features = Collections.newSetFromMap(IdentityHashMap<Feature, Boolean>())
+        features.addAll(dataSet.features)
+        val added = features.filter { !state.features.contains(it) }
+        val removed = state.features.filter { !features.contains(it) }
+        if (added.size + removed.size >= features.size || state.updates >= MAX_INCREMENTAL_UPDATES) {
+            state.reset(testIndices, trainIndices.size)
+            features.forEach { addContribution(state.distances, it.column, it.column, testIndices, 1.0) }
+        } else {
+            added.forEach { addContribution(state.distances, it.column, it.column, testIndices, 1.0) }
+            removed.forEach { addContribution(state.distances, it.column, it.column, testIndices, -1.0) }
+            ++state.updates
+        }
+        state.features = features
+        return classify(state.distances, testIndices.size, result)
+    }
+
+    private fun addContribution(distances: DoubleArray, trainColumn: IntArray, testColumn: IntArray,
+                                testIndices: IntArray, sign: Double) {
+        var min = Int.MAX_VALUE
+        var max = Int.MIN_VALUE
+        trainIndices.forEach {
+            min = Math.min(min, trainColumn[it])
+            max = Math.max(max, trainColumn[it])
+        }
+        if (max == min) {
+            return
+        }
+        val scale = 1.0 / (max - min)
+        val n = trainIndices.size
+        for (i in testIndices.indices) {
+            val testValue = testColumn[testIndices[i]]
+            val row = i * n
+            for (j in 0 until n) {
+                val diff = (testValue - trainColumn[trainIndices[j]]) * scale
+                distances[row + j] += sign * diff * diff
+            }
+        }
+    }
+
+    private fun classify(distances: DoubleArray, testCount: Int, result: IntArray): IntArray {
+        val classes = trainDs.classValues
+        val n = trainIndices.size
+        val neighbours = IntArray(Math.min(k, n))
+        for (i in 0 until testCount) {
+            val row = i * n
+            var found = 0
+            for (j in 0 until n) {
+                // insertion into sorted array of nearest neighbours; earlier train instance wins a tie
+                var pos = found
+                while (pos > 0 && distances[row + neighbours[pos - 1]] > distances[row + j] + EPSILON) {
+                    --pos
+                }
+                if (pos < neighbours.size) {
+                    System.arraycopy(neighbours, pos, neighbours, pos + 1, Math.min(found, neighbours.size - 1) - pos)
+                    neighbours[pos] = j
+                    found = Math.min(found + 1, neighbours.size)
+                }
+            }
+            val positive = (0 until found).count { classes[trainIndices[neighbours[it]]] == 1 }
+            result[i] = if (2 * positive > found) 1 else 0
+        }
+        return result
+    }
+
+    private class DistanceState {
+        var testIndices = IntArray(0)
+
+        var features: Set<Feature> = emptySet()
+
+        var distances = DoubleArray(0)
+
+        var updates = 0
+
+        fun reset(testIndices: IntArray, trainCount: Int) {
+            this.testIndices = testIndices
+            features = emptySet()
+            updates = 0
+            if (distances.size == testIndices.size * trainCount) {
+                Arrays.fill(distances, 0.0)
+            } else {
+                distances = DoubleArray(testIndices.size * trainCount)
+            }
+        }
+    }
+
+    companion object {
+        /**
+         * Distances are recomputed from scratch after this number of updates to drop accumulated rounding error
+         */
+        private const val MAX_INCREMENTAL_UPDATES = 64
+
+        /**
+         * Distances that differ less than this are ties
+         */
+        private const val EPSILON = 1E-9
+
+        private val states = ThreadLocal.withInitial { WeakHashMap<IntArray, DistanceState>() }
+    }
+}
@@ -0,0 +1,167 @@
+package ru.ifmo.ctddev.isaev
+
+import org.slf4j.LoggerFactory
+import java.util.*
+
+/**
+ * Linear SVM with hinge loss trained by dual coordinate descent (Hsieh et al., 2008) on unboxed feature columns.
+ * Like Weka SMO with default settings features are scaled to [0, 1] on the train set and C = 1.
+ *
+ * Dual variables are attached to instances, not features, so solution of a fold is a good starting point
+ * for the same fold of a neighbouring cut; callers may pass it as warm start of the next training.
+ * Training without warm start does not depend on previously trained models
+ *
+ * @author iisaev
+ */
+class LinearSvm(private val c: Double = 1.0,
+                private val epsilon: Double = 1E-3,
+                private val maxIterations: Int = 1000) : Classifier {
+
+    init {
+        if (c <= 0) {
+            throw IllegalArgumentException("C should be positive")
+        }
+    }
+
+    override fun train(trainDs: DataSet): TrainedClassifier {
+        val dataSet = trainDs.toFeatureSet()
+        return train(dataSet, IntArray(dataSet.getInstanceCount(), { it }), null)
+    }
+
+    override fun train(dataSet: FeatureDataSet, trainIndices: IntArray): TrainedClassifier {
+        return train(dataSet, trainIndices, null)
+    }
+
+    /**
+     * @param warmStart [LinearSvmModel.alphas] of previous solution on the same train instances, is not modified
+     */
+    fun train(dataSet: FeatureDataSet, trainIndices: IntArray, warmStart: DoubleArray?): LinearSvmModel {
+        val n = trainIndices.size
+        val columns = dataSet.features.map { it.column }
+        val d = columns.size + 1 // last coordinate is constant 1 for bias
+        val shift = DoubleArray(columns.size)
+        val scale = DoubleArray(columns.size)
+        columns.forEachIndexed { f, column ->
+            var min = Int.MAX_VALUE
+            var max = Int.MIN_VALUE
+            trainIndices.forEach {
+                min = Math.min(min, column[it])
+                max = Math.max(max, column[it])
+            }
+            shift[f] = min.toDouble()
+            scale[f] = if (max > min) 1.0 / (max - min) else 0.0
+        }
+
+        // row-major copy of scaled train instances
+        val x = DoubleArray(n * d)
+        val y = DoubleArray(n)
+        val classes = dataSet.classValues
+        for (i in 0 until n) {
+            val instance = trainIndices[i]
+            for (f in columns.indices) {
+                x[i * d + f] = (columns[f][instance] - shift[f]) * scale[f]
+            }
+            x[i * d + d - 1] = 1.0
+            y[i] = if (classes[instance] == 1) 1.0 else -1.0
+        }
+
+        val alphas = DoubleArray(n)
+        val w = DoubleArray(d)
+        if (warmStart != null && warmStart.size == n) {
+            for (i in 0 until n) {
+                alphas[i] = Math.min(Math.max(warmStart[i], 0.0), c)
+                if (alphas[i] != 0.0) {
+                    for (j in 0 until d) {
+                        w[j] += alphas[i] * y[i] * x[i * d + j]
+                    }
+                }
+            }
+        }
+        val qd = DoubleArray(n, { i -> (0 until d).sumByDouble { j -> x[i * d + j] * x[i * d + j] } })
+
+        val order = IntArray(n, { it })
+        val random = Random(0)
+        var iteration = 0
+        while (iteration < maxIterations) {
+            for (i in n - 1 downTo 1) {
+                val j = random.nextInt(i + 1)
+                val tmp = order[i]
+                order[i] = order[j]
+                order[j] = tmp
+            }
+            var maxPg = Double.NEGATIVE_INFINITY
+            var minPg = Double.POSITIVE_INFINITY
+            for (i in order) {
+                var margin = 0.0
+                for (j in 0 until d) {
+                    margin += w[j] * x[i * d + j]
+                }
+                val g = y[i] * margin - 1
+                val pg = when {
+                    alphas[i] == 0.0 -> Math.min(g, 0.0)
+                    alphas[i] == c -> Math.max(g, 0.0)
+                    else -> g
+                }
+                maxPg = Math.max(maxPg, pg)
+                minPg = Math.min(minPg, pg)
+                if (pg != 0.0 && qd[i] > 0) {
+                    val old = alphas[i]
+                    alphas[i] = Math.min(Math.max(old - g / qd[i], 0.0), c)
+                    val delta = (alphas[i] - old) * y[i]
+                    for (j in 0 until d) {
+                        w[j] += delta * x[i * d + j]
+                    }
+                }
+            }
+            ++iteration
+            if (maxPg - minPg <= epsilon) {
+                break
+            }
+        }
+        if (iteration == maxIterations) {
+            logger.debug("Linear SVM reached {} iterations without convergence", maxIterations)
+        }
+
+        // move scaling into weights: w·((v - shift) * scale) + b = Σ (w * scale) v + (b - Σ w * scale * shift)
+        val weights = DoubleArray(columns.size, { w[it] * scale[it] })
+        val bias = w[d - 1] - (0 until columns.size).sumByDouble { weights[it] * shift[it] }
+        return LinearSvmModel(weights, bias, alphas)
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(LinearSvm::class.java)
+    }
+}
+
+class LinearSvmModel(val weights: DoubleArray,
+                     val bias: Double,
+                     val alphas: DoubleArray) : TrainedClassifier {
+
+    override fun test(testDs: DataSet): List<Double> {
+        val dataSet = testDs.toFeatureSet()
+        return test(dataSet, IntArray(dataSet.getInstanceCount(), { it }))
+    }
+
+    override fun test(dataSet: FeatureDataSet, testIndices: IntArray): List<Double> {
+        return predict(dataSet, testIndices, IntArray(testIndices.size)).map { it.toDouble() }
+    }
+
+    override fun predict(dataSet: FeatureDataSet, testIndices: IntArray, result: IntArray): IntArray {
+        if (dataSet.getFeatureCount() != weights.size) {
+            throw IllegalArgumentException("Given dataset is not valid")
+        }
+        // feature-major order: inner loop runs over test instances of one column
+        val margins = DoubleArray(testIndices.size, { bias })
+        dataSet.features.forEachIndexed { f, feature ->
+            val column = feature.column
+            val weight = weights[f]
+            for (i in testIndices.indices) {
+                margins[i] += weight * column[testIndices[i]]
+            }
+        }
+        for (i in testIndices.indices) {
+            result[i] = if (margins[i] > 0) 1 else 0
+        }
+        return result
+    }
+}
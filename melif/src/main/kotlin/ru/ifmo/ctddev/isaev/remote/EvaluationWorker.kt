@@ -0,0 +1,107 @@
+package ru.ifmo.ctddev.isaev.remote
+
+import org.slf4j.LoggerFactory
+import ru.ifmo.ctddev.isaev.AlgorithmConfig
+import ru.ifmo.ctddev.isaev.DataSet
+import ru.ifmo.ctddev.isaev.SelectionResult
+import ru.ifmo.ctddev.isaev.point.Point
+import ru.ifmo.ctddev.isaev.results.RunStats
+import java.io.*
+import java.net.ServerSocket
+import java.net.Socket
+import java.net.SocketException
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Evaluates points requested by [RemoteEvaluator] with evaluator of [config];
+ * requested measures should be among measures of [config].
+ * Each connection is served by its own thread, one request at a time.
+ * Each request is evaluated with its own [RunStats], which only know the best score sent by the coordinator,
+ * so results do not depend on requests of other runs
+ *
+ * @author iisaev
+ */
+class EvaluationWorker(private val config: AlgorithmConfig,
+                       private val dataSet: DataSet) {
+    private val logger = LoggerFactory.getLogger(EvaluationWorker::class.java)
+
+    private val featureIndices = dataSet.toFeatureSet().features
+            .mapIndexed { i, feature -> feature.name to i }
+            .toMap()
+
+    private val measures = config.measures.associateBy { it.javaClass.name }
+
+    private val connections = AtomicInteger()
+
+    /**
+     * Starts accepting connections in a daemon thread
+     *
+     * @param port port to listen, or 0 for any free port
+     * @return socket that accepts connections; closing it stops the worker
+     */
+    fun listen(port: Int): ServerSocket {
+        val serverSocket = ServerSocket(port)
+        logger.info("Worker for dataset {} listens on port {}", dataSet.name, serverSocket.localPort)
+        daemon("worker-acceptor-${serverSocket.localPort}", Runnable {
+            try {
+                while (true) {
+                    val socket = serverSocket.accept()
+                    daemon("worker-connection-${connections.incrementAndGet()}", Runnable { serve(socket) })
+                }
+            } catch (e: SocketException) {
+                logger.info("Worker on port {} stopped", serverSocket.localPort)
+            }
+        })
+        return serverSocket
+    }
+
+    private fun serve(socket: Socket) {
+        socket.tcpNoDelay = true
+        socket.use {
+            try {
+                serve(it.getInputStream(), it.getOutputStream())
+            } catch (e: IOException) {
+                logger.warn("Connection from {} failed: {}", it.remoteSocketAddress, e.message)
+            }
+        }
+    }
+
+    /**
+     * Serves requests read from [input] until it is closed
+     */
+    fun serve(input: InputStream, output: OutputStream) {
+        val dataInput = DataInputStream(BufferedInputStream(input))
+        val dataOutput = DataOutputStream(BufferedOutputStream(output))
+        RemoteProtocol.writeHello(dataOutput, dataSet.getFeatureCount(), dataSet.getInstanceCount())
+        while (true) {
+            val request = RemoteProtocol.readRequest(dataInput) ?: return
+            try {
+                val requestMeasures = request.measures
+                        .map { measures[it] ?: throw IllegalArgumentException("Measure $it is not configured on the worker") }
+                        .toTypedArray()
+                if (requestMeasures.size != request.coordinates.size) {
+                    throw IllegalArgumentException("Point of ${request.coordinates.size} coordinates " +
+                            "does not match ${requestMeasures.size} measures")
+                }
+                val point = Point(*request.coordinates)
+                val stats = RunStats(config, dataSet, "Worker")
+                if (!request.bestScore.isNaN()) {
+                    stats.offerBestResult(SelectionResult(emptyList(), point, request.bestScore))
+                }
+                val result = config.foldsEvaluator.getSelectionResult(dataSet, point, stats, requestMeasures)
+                val indices = result.selectedFeatures.map { featureIndices[it.name]!! }.toIntArray()
+                RemoteProtocol.writeResult(dataOutput,
+                        RemoteProtocol.Response(result.score, result.isPruned, result.fidelity, indices))
+            } catch (e: RuntimeException) {
+                logger.error("Failed to evaluate point", e)
+                RemoteProtocol.writeError(dataOutput, e.toString())
+            }
+        }
+    }
+
+    private fun daemon(name: String, task: Runnable) {
+        val thread = Thread(task, name)
+        thread.isDaemon = true
+        thread.start()
+    }
+}
@@ -0,0 +1,90 @@
+package ru.ifmo.ctddev.isaev.remote
+
+import ru.ifmo.ctddev.isaev.*
+import java.io.*
+import java.util.*
+
+/**
+ * Entry point of a child process of [ProcessPool].
+ * Arguments are binary dataset file, name of [Classifiers] and name of [Score] in [SCORES];
+ * requests are read from stdin and answers written to stdout, so everything else printed goes to stderr.
+ * Received folds are interned by content, so caches of learners keyed by fold arrays are hit in the child as well
+ *
+ * @author iisaev
+ */
+object ForkedFoldWorker {
+    @JvmStatic
+    fun main(args: Array<String>) {
+        val output = DataOutputStream(BufferedOutputStream(FileOutputStream(FileDescriptor.out)))
+        System.setOut(System.err)
+        val input = DataInputStream(BufferedInputStream(FileInputStream(FileDescriptor.`in`)))
+        val dataSet = BinaryDataSet.map(File(args[0]))
+        val classifiers = Classifiers.valueOf(args[1])
+        val score = newScore(args[2])
+        val features = dataSet.features
+        RemoteProtocol.writeHello(output, dataSet.getFeatureCount(), dataSet.getInstanceCount())
+        while (true) {
+            val request = RemoteProtocol.readFoldRequest(input) ?: return
+            try {
+                val cut = FeatureDataSet(request.featureIndices.map { features[it] }, dataSet.classes, dataSet.name)
+                val matrix = getConfusionMatrix(classifiers, cut, internFold(request.trainIndices, request.testIndices))
+                RemoteProtocol.writeScore(output, score.calculate(matrix))
+            } catch (e: RuntimeException) {
+                e.printStackTrace()
+                RemoteProtocol.writeError(output, e.toString())
+            }
+        }
+    }
+
+    const val MAX_FOLDS = 64
+
+    /**
+     * Received folds in access order; the least recently used one is dropped when there are too many
+     */
+    private val FOLDS = object : LinkedHashMap<FoldKey, Fold>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<FoldKey, Fold>): Boolean {
+            return size > MAX_FOLDS
+        }
+    }
+
+    /**
+     * @return fold received earlier with the same instances, or a new one of the given arrays
+     */
+    fun internFold(trainIndices: IntArray, testIndices: IntArray): Fold {
+        return synchronized(FOLDS) {
+            FOLDS.getOrPut(FoldKey(trainIndices, testIndices), { Fold(trainIndices, testIndices) })
+        }
+    }
+
+    private class FoldKey(val trainIndices: IntArray, val testIndices: IntArray) {
+        private val hash = 31 * Arrays.hashCode(trainIndices) + Arrays.hashCode(testIndices)
+
+        override fun equals(other: Any?): Boolean {
+            return other is FoldKey && Arrays.equals(trainIndices, other.trainIndices)
+                    && Arrays.equals(testIndices, other.testIndices)
+        }
+
+        override fun hashCode(): Int = hash
+    }
+
+    /**
+     * Scores children can compute, by names passed to them
+     */
+    private val SCORES = mapOf<String, () -> Score>(
+            "F1" to { F1Score() },
+            "ACCURACY" to { AccuracyScore() },
+            "MCC" to { MccScore() },
+            "BALANCED_ACCURACY" to { BalancedAccuracyScore() },
+            "AUC" to { AucScore() }
+    )
+
+    fun scoreName(score: Score): String {
+        return SCORES.entries.firstOrNull { it.value().javaClass == score.javaClass }?.key
+                ?: throw IllegalArgumentException("Score ${score.javaClass.name} can not be computed in child processes")
+    }
+
+    private fun newScore(name: String): Score {
+        val factory = SCORES[name] ?: throw IllegalArgumentException("Unknown score $name")
+        return factory()
+    }
+}
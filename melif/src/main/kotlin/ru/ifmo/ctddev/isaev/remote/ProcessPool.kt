@@ -0,0 +1,149 @@
+package ru.ifmo.ctddev.isaev.remote
+
+import org.slf4j.LoggerFactory
+import ru.ifmo.ctddev.isaev.*
+import java.io.*
+import java.util.*
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+/**
+ * Child JVMs evaluating folds, each one fold at a time. Children map the same binary dataset file
+ * (see [BinaryDataSet]), so only indices of cut features and fold instances and scores pass through their pipes;
+ * each child has its own heap and garbage collector. A child that dies is restarted when its slot is used next time,
+ * and the fold is retried once.
+ *
+ * [classifiers] and [score] should be those of the evaluator using the pool; score should be known to [ForkedFoldWorker]
+ *
+ * @author iisaev
+ */
+class ProcessPool(private val dataSetFile: File,
+                  processes: Int,
+                  private val classifiers: Classifiers,
+                  private val score: Score,
+                  private val jvmOptions: List<String>) : Closeable {
+    private val logger = LoggerFactory.getLogger(ProcessPool::class.java)
+
+    constructor(dataSetFile: File, processes: Int, classifiers: Classifiers, score: Score)
+            : this(dataSetFile, processes, classifiers, score, emptyList())
+
+    private val dataSet = BinaryDataSet.map(dataSetFile)
+
+    private val featureIndices = dataSet.features
+            .mapIndexed { i, feature -> feature.name to i }
+            .toMap()
+
+    private val scoreName = ForkedFoldWorker.scoreName(score)
+
+    private val children = ArrayList<Child>()
+
+    private val idle = LinkedBlockingQueue<Child>()
+
+    init {
+        if (processes < 1) {
+            throw IllegalArgumentException("At least one process is required")
+        }
+        try {
+            repeat(processes) {
+                val child = Child()
+                children.add(child)
+                child.start()
+                idle.add(child)
+            }
+        } catch (e: IOException) {
+            close()
+            throw IllegalStateException("Failed to start child process", e)
+        }
+    }
+
+    /**
+     * @param cut features of the dataset in the file
+     */
+    fun score(cut: FeatureDataSet, fold: Fold): Double {
+        val indices = cut.features
+                .map { featureIndices[it.name] ?: throw IllegalArgumentException("Feature ${it.name} is not in $dataSetFile") }
+                .toIntArray()
+        val request = RemoteProtocol.FoldRequest(indices, fold.trainIndices, fold.testIndices)
+        var lastError: IOException? = null
+        repeat(MAX_ATTEMPTS) {
+            val child = idle.take()
+            try {
+                return child.score(request)
+            } catch (e: IOException) {
+                logger.warn("Child process failed: {}; it is restarted", e.message)
+                child.destroy()
+                lastError = e
+            } finally {
+                idle.add(child) // the slot is kept even if the child failed to start
+            }
+        }
+        throw IllegalStateException("Failed to evaluate fold in $MAX_ATTEMPTS attempts", lastError)
+    }
+
+    override fun close() {
+        children.forEach { it.destroy() }
+    }
+
+    /**
+     * Slot of a child process; the process is started when the slot is used after failure
+     */
+    private inner class Child {
+        private var process: Process? = null
+
+        private var input: DataInputStream? = null
+
+        private var output: DataOutputStream? = null
+
+        fun start() {
+            val command = listOf(File(System.getProperty("java.home"), "bin/java").path) + jvmOptions +
+                    listOf("-cp", System.getProperty("java.class.path"), ForkedFoldWorker::class.java.name,
+                            dataSetFile.path, classifiers.name, scoreName)
+            val process = ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start()
+            this.process = process
+            val input = DataInputStream(BufferedInputStream(process.inputStream))
+            this.input = input
+            this.output = DataOutputStream(BufferedOutputStream(process.outputStream))
+            val hello = try {
+                RemoteProtocol.readHello(input)
+            } catch (e: IOException) {
+                destroy()
+                throw e
+            }
+            if (hello.featureCount != dataSet.getFeatureCount() || hello.instanceCount != dataSet.getInstanceCount()) {
+                destroy()
+                throw IllegalStateException("Child process mapped another dataset")
+            }
+        }
+
+        fun score(request: RemoteProtocol.FoldRequest): Double {
+            if (process == null) {
+                start()
+            }
+            RemoteProtocol.writeFoldRequest(output!!, request)
+            return RemoteProtocol.readScore(input!!)
+        }
+
+        fun destroy() {
+            val process = this.process ?: return
+            this.process = null
+            try {
+                output!!.close() // child exits at end of input
+                if (!process.waitFor(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    process.destroy()
+                }
+            } catch (e: IOException) {
+                process.destroy()
+            }
+            input = null
+            output = null
+        }
+    }
+
+    companion object {
+        private const val MAX_ATTEMPTS = 2
+
+        private const val STOP_TIMEOUT_SECONDS = 1L
+    }
+}
@@ -0,0 +1,163 @@
+package ru.ifmo.ctddev.isaev.remote
+
+import ru.ifmo.ctddev.isaev.*
+import ru.ifmo.ctddev.isaev.point.Point
+import ru.ifmo.ctddev.isaev.results.RunStats
+import java.io.*
+import java.net.InetSocketAddress
+import java.net.Socket
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Supplier
+
+/**
+ * Evaluates points on remote [EvaluationWorker]s, which should be started on the same dataset.
+ * Each worker has [connectionsPerWorker] connections, each serving one point at a time;
+ * a point is sent over any idle connection, so faster workers get more points.
+ * A point failed because of connection error or [readTimeout] is retried on another connection,
+ * at most [maxAttempts] times in total; failed connection is reopened when it is used next time.
+ * Points wait for connections and responses in threads of the evaluator, one per connection,
+ * so computation pools are not blocked by network I/O.
+ *
+ * Workers prune points against the best score of the run if their evaluators race.
+ * Classifier, filter, splitter and score should match the workers' ones; they are used for reporting only
+ *
+ * @author iisaev
+ */
+class RemoteEvaluator(workers: List<InetSocketAddress>,
+                      connectionsPerWorker: Int,
+                      private val maxAttempts: Int,
+                      classifiers: Classifiers,
+                      dataSetFilter: DataSetFilter,
+                      dataSetSplitter: DataSetSplitter,
+                      score: Score)
+    : FoldsEvaluator("Remote", classifiers, dataSetSplitter, dataSetFilter, score), Closeable {
+
+    private val idle = LinkedBlockingQueue<Connection>()
+
+    private val ioExecutor: ExecutorService
+
+    /**
+     * Milliseconds to wait for a response of a worker; 0 waits forever
+     */
+    @Volatile
+    var readTimeout = DEFAULT_READ_TIMEOUT
+
+    init {
+        if (workers.isEmpty() || connectionsPerWorker < 1 || maxAttempts < 1) {
+            throw IllegalArgumentException("At least one worker, connection and attempt are required")
+        }
+        repeat(connectionsPerWorker) {
+            workers.forEach { idle.add(Connection(it)) }
+        }
+        val threads = AtomicInteger()
+        ioExecutor = Executors.newFixedThreadPool(idle.size, { task ->
+            val thread = Thread(task, "remote-evaluator-${threads.incrementAndGet()}")
+            thread.isDaemon = true
+            thread
+        })
+    }
+
+    override fun evaluate(dataSet: DataSet, point: Point, stats: RunStats, measures: Array<out RelevanceMeasure>): SelectionResult {
+        var lastError: IOException? = null
+        repeat(maxAttempts) {
+            val connection = idle.take()
+            val response = try {
+                connection.evaluate(dataSet, point, measures, stats.bestResult?.score ?: Double.NaN, readTimeout)
+            } catch (e: IOException) {
+                logger.warn("Failed to evaluate point {} on {}: {}", arrayOf(point, connection.address, e.message))
+                connection.close()
+                lastError = e
+                null
+            } finally {
+                idle.add(connection) // failed connection goes to the tail, so other workers are tried first
+            }
+            if (response != null) {
+                val features = dataSet.toFeatureSet().features
+                val selected = response.featureIndices.map { features[it] }
+                val result = when {
+                    response.isPruned -> PrunedSelectionResult(selected, point, response.score, response.fidelity)
+                    response.fidelity < 1.0 -> LowFidelitySelectionResult(selected, point, response.score, response.fidelity)
+                    else -> SelectionResult(selected, point, response.score)
+                }
+                logger.debug("Point {}; remote score: {}", point, response.score)
+                stats.updateBestResult(result)
+                return result
+            }
+        }
+        throw IllegalStateException("Failed to evaluate point $point in $maxAttempts attempts", lastError)
+    }
+
+    /**
+     * The point is sent as a whole, so cancellation does not stop it; [executor] is not used,
+     * the point waits for its worker in a thread of the evaluator
+     */
+    override fun startEvaluation(dataSet: DataSet, point: Point, stats: RunStats, measures: Array<out RelevanceMeasure>,
+                                 executor: Executor): CompletableFuture<SelectionResult> {
+        return CompletableFuture.supplyAsync(Supplier { evaluate(dataSet, point, stats, measures) }, ioExecutor)
+    }
+
+    override fun close() {
+        ioExecutor.shutdown()
+        idle.forEach { it.close() }
+    }
+
+    private class Connection(val address: InetSocketAddress) : Closeable {
+        private var socket: Socket? = null
+
+        private var input: DataInputStream? = null
+
+        private var output: DataOutputStream? = null
+
+        private var hello: RemoteProtocol.Hello? = null
+
+        fun evaluate(dataSet: DataSet, point: Point, measures: Array<out RelevanceMeasure>, bestScore: Double,
+                     readTimeout: Int): RemoteProtocol.Response {
+            if (socket == null) {
+                open()
+            }
+            socket!!.soTimeout = readTimeout
+            val hello = this.hello!!
+            if (hello.featureCount != dataSet.getFeatureCount() || hello.instanceCount != dataSet.getInstanceCount()) {
+                throw IllegalStateException("Worker $address has another dataset: " +
+                        "${hello.featureCount} features and ${hello.instanceCount} instances")
+            }
+            RemoteProtocol.writeRequest(output!!,
+                    RemoteProtocol.Request(measures.map { it.javaClass.name }, point.coordinates, bestScore))
+            return RemoteProtocol.readResponse(input!!)
+        }
+
+        private fun open() {
+            val socket = Socket()
+            try {
+                socket.connect(address, CONNECT_TIMEOUT)
+                socket.tcpNoDelay = true
+                val input = DataInputStream(BufferedInputStream(socket.getInputStream()))
+                hello = RemoteProtocol.readHello(input)
+                this.input = input
+                this.output = DataOutputStream(BufferedOutputStream(socket.getOutputStream()))
+                this.socket = socket
+            } catch (e: IOException) {
+                socket.close()
+                throw e
+            }
+        }
+
+        override fun close() {
+            socket?.close()
+            socket = null
+            input = null
+            output = null
+        }
+    }
+
+    companion object {
+        private const val CONNECT_TIMEOUT = 10000
+
+        const val DEFAULT_READ_TIMEOUT = 600000
+    }
+}
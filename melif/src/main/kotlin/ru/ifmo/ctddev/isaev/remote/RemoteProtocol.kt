@@ -0,0 +1,162 @@
+package ru.ifmo.ctddev.isaev.remote
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+
+/**
+ * Binary protocol between [RemoteEvaluator] and [EvaluationWorker].
+ * Worker greets with [MAGIC], [VERSION], feature and instance counts of its dataset;
+ * then for each request [EVALUATE], number and class names of measures, dimension and coordinates of the point,
+ * and score of the best result of the run or NaN, it answers [OK], score, pruned flag, fidelity, number and indices
+ * of selected features, or [ERROR] and message.
+ * Indices refer to features of the dataset sorted by name, as in [ru.ifmo.ctddev.isaev.FeatureDataSet].
+ *
+ * Workers of [ProcessPool] evaluate single folds instead: request is [EVALUATE_FOLD], indices of cut features,
+ * train and test instance indices, each prefixed with its length; answer is [OK] and score of the fold, or [ERROR]
+ *
+ * @author iisaev
+ */
+object RemoteProtocol {
+    const val MAGIC = 0x4d454c46 // "MELF"
+
+    const val VERSION = 3
+
+    const val EVALUATE: Byte = 1
+
+    const val EVALUATE_FOLD: Byte = 2
+
+    const val OK: Byte = 0
+
+    const val ERROR: Byte = 1
+
+    class Hello(val featureCount: Int, val instanceCount: Int)
+
+    class Response(val score: Double, val isPruned: Boolean, val fidelity: Double, val featureIndices: IntArray)
+
+    /**
+     * @param bestScore score of the best result of the run, which the worker may prune the point against; NaN if none
+     */
+    class Request(val measures: List<String>, val coordinates: DoubleArray, val bestScore: Double)
+
+    class FoldRequest(val featureIndices: IntArray, val trainIndices: IntArray, val testIndices: IntArray)
+
+    fun writeHello(output: DataOutputStream, featureCount: Int, instanceCount: Int) {
+        output.writeInt(MAGIC)
+        output.writeInt(VERSION)
+        output.writeInt(featureCount)
+        output.writeInt(instanceCount)
+        output.flush()
+    }
+
+    fun readHello(input: DataInputStream): Hello {
+        if (input.readInt() != MAGIC) {
+            throw IOException("Peer is not an evaluation worker")
+        }
+        val version = input.readInt()
+        if (version != VERSION) {
+            throw IOException("Unsupported protocol version $version")
+        }
+        return Hello(input.readInt(), input.readInt())
+    }
+
+    fun writeRequest(output: DataOutputStream, request: Request) {
+        output.writeByte(EVALUATE.toInt())
+        output.writeInt(request.measures.size)
+        request.measures.forEach { output.writeUTF(it) }
+        output.writeInt(request.coordinates.size)
+        request.coordinates.forEach { output.writeDouble(it) }
+        output.writeDouble(request.bestScore)
+        output.flush()
+    }
+
+    /**
+     * @return requested point, or null if the peer closed the connection
+     */
+    fun readRequest(input: DataInputStream): Request? {
+        val type = input.read()
+        if (type == -1) {
+            return null
+        }
+        if (type != EVALUATE.toInt()) {
+            throw IOException("Unknown request type $type")
+        }
+        val measures = List(input.readInt(), { input.readUTF() })
+        val coordinates = DoubleArray(input.readInt(), { input.readDouble() })
+        return Request(measures, coordinates, input.readDouble())
+    }
+
+    fun writeResult(output: DataOutputStream, response: Response) {
+        output.writeByte(OK.toInt())
+        output.writeDouble(response.score)
+        output.writeBoolean(response.isPruned)
+        output.writeDouble(response.fidelity)
+        writeInts(output, response.featureIndices)
+        output.flush()
+    }
+
+    fun writeFoldRequest(output: DataOutputStream, request: FoldRequest) {
+        output.writeByte(EVALUATE_FOLD.toInt())
+        writeInts(output, request.featureIndices)
+        writeInts(output, request.trainIndices)
+        writeInts(output, request.testIndices)
+        output.flush()
+    }
+
+    /**
+     * @return requested fold, or null if the peer closed the connection
+     */
+    fun readFoldRequest(input: DataInputStream): FoldRequest? {
+        val type = input.read()
+        if (type == -1) {
+            return null
+        }
+        if (type != EVALUATE_FOLD.toInt()) {
+            throw IOException("Unknown request type $type")
+        }
+        return FoldRequest(readInts(input), readInts(input), readInts(input))
+    }
+
+    fun writeScore(output: DataOutputStream, score: Double) {
+        output.writeByte(OK.toInt())
+        output.writeDouble(score)
+        output.flush()
+    }
+
+    /**
+     * @throws IllegalStateException if the worker failed to evaluate the fold
+     */
+    fun readScore(input: DataInputStream): Double {
+        val type = input.readByte()
+        return when (type) {
+            OK -> input.readDouble()
+            ERROR -> throw IllegalStateException("Worker failed to evaluate fold: ${input.readUTF()}")
+            else -> throw IOException("Unknown response type $type")
+        }
+    }
+
+    fun writeError(output: DataOutputStream, message: String) {
+        output.writeByte(ERROR.toInt())
+        output.writeUTF(message)
+        output.flush()
+    }
+
+    /**
+     * @throws IllegalStateException if the worker failed to evaluate the point
+     */
+    fun readResponse(input: DataInputStream): Response {
+        val type = input.readByte()
+        return when (type) {
+            OK -> Response(input.readDouble(), input.readBoolean(), input.readDouble(), readInts(input))
+            ERROR -> throw IllegalStateException("Worker failed to evaluate point: ${input.readUTF()}")
+            else -> throw IOException("Unknown response type $type")
+        }
+    }
+
+    private fun writeInts(output: DataOutputStream, values: IntArray) {
+        output.writeInt(values.size)
+        values.forEach { output.writeInt(it) }
+    }
+
+    private fun readInts(input: DataInputStream): IntArray = IntArray(input.readInt(), { input.readInt() })
+}
@@ -7,37 +7,206 @@ import java.lang.Double.isNaN
  * @author iisaev
  */
 interface Score {
-    fun calculate(expected: List<Int>, actual: List<Int>): Double
+    fun calculate(expected: List<Int>, actual: List<Int>): Double {
+        return calculate(ConfusionMatrix.of(expected, actual))
+    }
+
+    fun calculate(matrix: ConfusionMatrix): Double
+
+    /**
+     * Greatest possible value of the score
+     */
+    fun upperBound(): Double = 1.0
 }
 
 class F1Score : Score {
-    override fun calculate(expected: List<Int>, actual: List<Int>): Double {
-        if (expected.size != actual.size) {
-            throw IllegalArgumentException("Expected and  actual lists must have same size")
-        }
-        var truePositive = 0
-        var trueNegative = 0
-        var falsePositive = 0
-        var falseNegative = 0
-        expected.forEachIndexed { i, ex ->
-            val act = actual[i]
-            if (ex == 1 && act == 1) {
-                ++truePositive
-            }
-            if (ex == 0 && act == 0) {
-                ++trueNegative
+    override fun calculate(matrix: ConfusionMatrix): Double {
+        val result = matrix.f1()
+        return if (isNaN(result)) MIN_VALUE else result
+    }
+}
+
+class AccuracyScore : Score {
+    override fun calculate(matrix: ConfusionMatrix): Double {
+        val result = matrix.accuracy()
+        return if (isNaN(result)) MIN_VALUE else result
+    }
+}
+
+class MccScore : Score {
+    override fun calculate(matrix: ConfusionMatrix): Double = matrix.mcc()
+}
+
+class BalancedAccuracyScore : Score {
+    override fun calculate(matrix: ConfusionMatrix): Double {
+        val result = matrix.balancedAccuracy()
+        return if (isNaN(result)) MIN_VALUE else result
+    }
+}
+
+/**
+ * Area under ROC curve; only classifiers giving probabilities of classes can be scored,
+ * predictions without them are scored as an empty class
+ */
+class AucScore : Score {
+    override fun calculate(matrix: ConfusionMatrix): Double {
+        val result = matrix.auc()
+        return if (isNaN(result)) MIN_VALUE else result
+    }
+}
+
+/**
+ * Counts of binary predictions; all metrics are derived from one pass over predictions.
+ * Probabilities of class 1 are kept only if they are given, for AUC
+ *
+ * @author iisaev
+ */
+class ConfusionMatrix {
+    var truePositive = 0
+        private set
+
+    var trueNegative = 0
+        private set
+
+    var falsePositive = 0
+        private set
+
+    var falseNegative = 0
+        private set
+
+    private var probabilities = DoubleArray(0)
+
+    private var probabilityClasses = IntArray(0)
+
+    private var probabilityCount = 0
+
+    val total: Int
+        get() = truePositive + trueNegative + falsePositive + falseNegative
+
+    fun add(expected: Int, actual: Int) {
+        if (expected == 1) {
+            if (actual == 1) ++truePositive else ++falseNegative
+        } else {
+            if (actual == 1) ++falsePositive else ++trueNegative
+        }
+    }
+
+    /**
+     * @param probability predicted probability of class 1
+     */
+    fun add(expected: Int, actual: Int, probability: Double) {
+        add(expected, actual)
+        addProbability(expected, probability)
+    }
+
+    private fun addProbability(expected: Int, probability: Double) {
+        if (probabilityCount == probabilities.size) {
+            val capacity = Math.max(16, 2 * probabilityCount)
+            probabilities = probabilities.copyOf(capacity)
+            probabilityClasses = probabilityClasses.copyOf(capacity)
+        }
+        probabilities[probabilityCount] = probability
+        probabilityClasses[probabilityCount] = expected
+        ++probabilityCount
+    }
+
+    /**
+     * Adds predictions for instances with given indices
+     *
+     * @param classes classes of all instances of the dataset
+     * @param predictions predicted classes, in order of [indices]
+     */
+    fun add(classes: IntArray, indices: IntArray, predictions: IntArray): ConfusionMatrix {
+        for (i in indices.indices) {
+            add(classes[indices[i]], predictions[i])
+        }
+        return this
+    }
+
+    fun add(other: ConfusionMatrix): ConfusionMatrix {
+        truePositive += other.truePositive
+        trueNegative += other.trueNegative
+        falsePositive += other.falsePositive
+        falseNegative += other.falseNegative
+        for (i in 0 until other.probabilityCount) {
+            addProbability(other.probabilityClasses[i], other.probabilities[i])
+        }
+        return this
+    }
+
+    fun precision(): Double = truePositive.toDouble() / (truePositive + falsePositive)
+
+    fun recall(): Double = truePositive.toDouble() / (truePositive + falseNegative)
+
+    fun specificity(): Double = trueNegative.toDouble() / (trueNegative + falsePositive)
+
+    fun f1(): Double {
+        val precision = precision()
+        val recall = recall()
+        return 2.0 * precision * recall / (precision + recall)
+    }
+
+    fun accuracy(): Double = (truePositive + trueNegative).toDouble() / total
+
+    fun balancedAccuracy(): Double = (recall() + specificity()) / 2
+
+    /**
+     * Matthews correlation coefficient; 0 if any row or column of the matrix is empty
+     */
+    fun mcc(): Double {
+        val denominator = Math.sqrt((truePositive + falsePositive).toDouble() * (truePositive + falseNegative) *
+                (trueNegative + falsePositive) * (trueNegative + falseNegative))
+        if (denominator == 0.0) {
+            return 0.0
+        }
+        return (truePositive.toDouble() * trueNegative - falsePositive.toDouble() * falseNegative) / denominator
+    }
+
+    /**
+     * Area under ROC curve by probabilities given to [add], ties count as half; NaN if there are no probabilities
+     * or only one class among them
+     */
+    fun auc(): Double {
+        val order = (0 until probabilityCount).sortedBy { probabilities[it] }
+        var positives = 0L
+        var negatives = 0L
+        var rankSum = 0.0
+        var i = 0
+        while (i < order.size) {
+            var j = i
+            while (j < order.size && probabilities[order[j]] == probabilities[order[i]]) {
+                ++j
             }
-            if (ex == 0 && act == 1) {
-                ++falsePositive
+            val rank = (i + j + 1) / 2.0 // average of 1-based ranks i + 1..j
+            for (k in i until j) {
+                if (probabilityClasses[order[k]] == 1) {
+                    ++positives
+                    rankSum += rank
+                } else {
+                    ++negatives
+                }
             }
-            if (ex == 1 && act == 0) {
-                ++falseNegative
+            i = j
+        }
+        if (positives == 0L || negatives == 0L) {
+            return Double.NaN
+        }
+        return (rankSum - positives * (positives + 1) / 2.0) / (positives * negatives)
+    }
+
+    override fun toString(): String {
+        return "TP: $truePositive, TN: $trueNegative, FP: $falsePositive, FN: $falseNegative"
+    }
+
+    companion object {
+        @JvmStatic
+        fun of(expected: List<Int>, actual: List<Int>): ConfusionMatrix {
+            if (expected.size != actual.size) {
+                throw IllegalArgumentException("Expected and  actual lists must have same size")
             }
+            val result = ConfusionMatrix()
+            expected.forEachIndexed { i, ex -> result.add(ex, actual[i]) }
+            return result
         }
-        val precision = truePositive.toDouble() / (truePositive + falsePositive)
-        val recall = truePositive.toDouble() / (truePositive + falseNegative)
-        var result = 2.0 * precision * recall / (precision + recall)
-        result = if (isNaN(result)) MIN_VALUE else result
-        return result
     }
 }
@@ -0,0 +1,259 @@
+package ru.ifmo.ctddev.isaev
+
+import ru.ifmo.ctddev.isaev.point.Point
+import java.lang.ref.ReferenceQueue
+import java.lang.ref.WeakReference
+import java.util.*
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Results of evaluated points, shared by algorithms whose evaluators have the same cache.
+ * Points are normalized, so equal points have equal coordinates up to rounding;
+ * coordinates are quantized with step [QUANTUM] to form the key.
+ * Least recently used results are evicted when there are more than [capacity] of them
+ * or their estimated size exceeds [maxBytes]; results of collected datasets and evaluators are dropped.
+ * Points being evaluated are registered with their futures, so concurrent requests of a point share one evaluation
+ *
+ * @author iisaev
+ */
+class SelectionResultCache(private val capacity: Int,
+                           private val maxBytes: Long) {
+
+    constructor(capacity: Int) : this(capacity, Long.MAX_VALUE)
+
+    init {
+        if (capacity < 1 || maxBytes < 1) {
+            throw IllegalArgumentException("Cache capacity should be positive")
+        }
+    }
+
+    private val results = LinkedHashMap<Key, SelectionResult>(16, 0.75f, true)
+
+    private var bytes = 0L
+
+    private val collected = ReferenceQueue<Any>()
+
+    private val inFlight = HashMap<Key, Flight>()
+
+    @Volatile
+    var hits = 0L
+        private set
+
+    /**
+     * Requests attached to an evaluation already in progress
+     */
+    @Volatile
+    var inFlightHits = 0L
+        private set
+
+    @Volatile
+    var misses = 0L
+        private set
+
+    /**
+     * @param evaluator evaluator that produced the result; results of different evaluators are not shared
+     */
+    fun get(evaluator: FoldsEvaluator, dataSet: DataSet, measures: Array<out RelevanceMeasure>, point: Point): SelectionResult? {
+        val key = Key(evaluator, dataSet, measures, point, null)
+        synchronized(results) {
+            val result = results[key]
+            if (result == null) {
+                ++misses
+            } else {
+                ++hits
+            }
+            return result
+        }
+    }
+
+    fun put(evaluator: FoldsEvaluator, dataSet: DataSet, measures: Array<out RelevanceMeasure>, result: SelectionResult) {
+        val key = Key(evaluator, dataSet, measures, result.point, collected)
+        synchronized(results) {
+            store(key, result)
+        }
+    }
+
+    /**
+     * Returns cached result, or evaluation of the point in progress, or starts new evaluation;
+     * result of the evaluation is cached unless it is pruned.
+     * Each caller gets its own future; the evaluation is cancelled when futures of all its callers are cancelled
+     *
+     * @param start called at most once, outside of the cache lock
+     */
+    fun getOrStart(evaluator: FoldsEvaluator, dataSet: DataSet, measures: Array<out RelevanceMeasure>, point: Point,
+                   start: () -> CompletableFuture<SelectionResult>): CompletableFuture<SelectionResult> {
+        val key = Key(evaluator, dataSet, measures, point, collected)
+        val flight = Flight()
+        synchronized(results) {
+            val result = results[key]
+            if (result != null) {
+                ++hits
+                return CompletableFuture.completedFuture(result)
+            }
+            val pending = inFlight[key]
+            if (pending != null) {
+                ++inFlightHits
+                ++pending.callers
+                return view(key, pending)
+            }
+            ++misses
+            inFlight[key] = flight
+        }
+        val evaluation = try {
+            start()
+        } catch (e: RuntimeException) {
+            val failed = CompletableFuture<SelectionResult>()
+            failed.completeExceptionally(e)
+            failed
+        }
+        evaluation.whenComplete { result, error ->
+            synchronized(results) {
+                if (result != null && !result.isPruned) {
+                    store(key, result)
+                }
+                if (inFlight[key] === flight) {
+                    inFlight.remove(key)
+                }
+            }
+            if (error != null) {
+                flight.promise.completeExceptionally(error)
+            } else {
+                flight.promise.complete(result)
+            }
+        }
+        val view = view(key, flight)
+        val abandoned = synchronized(results) {
+            flight.evaluation = evaluation
+            flight.callers == 0
+        }
+        if (abandoned) {
+            evaluation.cancel(false)
+        }
+        return view
+    }
+
+    private fun view(key: Key, flight: Flight): CompletableFuture<SelectionResult> {
+        val view = flight.promise.thenApply { it }
+        view.whenComplete { _, _ ->
+            if (view.isCancelled) {
+                release(key, flight)
+            }
+        }
+        return view
+    }
+
+    private fun release(key: Key, flight: Flight) {
+        val evaluation = synchronized(results) {
+            if (--flight.callers > 0) {
+                return
+            }
+            if (inFlight[key] === flight) {
+                inFlight.remove(key)
+            }
+            flight.evaluation
+        }
+        evaluation?.cancel(false)
+    }
+
+    private fun store(key: Key, result: SelectionResult) {
+        val previous = results.put(key, result)
+        if (previous != null) {
+            bytes -= estimateSize(previous)
+        }
+        bytes += estimateSize(result)
+        var purge = false
+        while (collected.poll() != null) {
+            purge = true
+        }
+        if (purge) {
+            removeIf { it.isCollected() }
+        }
+        val eldest = results.entries.iterator()
+        while (eldest.hasNext() && (results.size > capacity || bytes > maxBytes)) {
+            bytes -= estimateSize(eldest.next().value)
+            eldest.remove()
+        }
+    }
+
+    private fun removeIf(predicate: (Key) -> Boolean) {
+        val entries = results.entries.iterator()
+        while (entries.hasNext()) {
+            val entry = entries.next()
+            if (predicate(entry.key)) {
+                bytes -= estimateSize(entry.value)
+                entries.remove()
+            }
+        }
+    }
+
+    private fun estimateSize(result: SelectionResult): Long {
+        return ENTRY_SIZE + 8L * (result.point.coordinates.size + result.selectedFeatures.size)
+    }
+
+    fun size(): Int = synchronized(results) { results.size }
+
+    /**
+     * @return estimated size of cached results in bytes; features themselves belong to datasets and are not counted
+     */
+    fun sizeInBytes(): Long = synchronized(results) { bytes }
+
+    fun clear() {
+        synchronized(results) {
+            results.clear()
+            bytes = 0
+        }
+    }
+
+    private class Flight {
+        val promise = CompletableFuture<SelectionResult>()
+
+        var callers = 1
+
+        var evaluation: CompletableFuture<SelectionResult>? = null
+    }
+
+    /**
+     * Evaluator and dataset are compared by identity and weakly referenced, measures are compared by their classes
+     */
+    private class Key(evaluator: FoldsEvaluator,
+                      dataSet: DataSet,
+                      measures: Array<out RelevanceMeasure>,
+                      point: Point,
+                      queue: ReferenceQueue<Any>?) {
+        private val evaluator = WeakReference<Any>(evaluator, queue)
+
+        private val dataSet = WeakReference<Any>(dataSet, queue)
+
+        private val measures = measures.map { it.javaClass }
+
+        private val coordinates = LongArray(point.coordinates.size, { Math.round(point.coordinates[it] / QUANTUM) })
+
+        private val hash = Objects.hash(System.identityHashCode(evaluator), System.identityHashCode(dataSet),
+                this.measures, Arrays.hashCode(coordinates))
+
+        fun isCollected(): Boolean = evaluator.get() == null || dataSet.get() == null
+
+        override fun equals(other: Any?): Boolean {
+            if (other !is Key || hash != other.hash || isCollected()) {
+                return false
+            }
+            return evaluator.get() === other.evaluator.get() &&
+                    dataSet.get() === other.dataSet.get() &&
+                    measures == other.measures &&
+                    Arrays.equals(coordinates, other.coordinates)
+        }
+
+        override fun hashCode(): Int = hash
+    }
+
+    companion object {
+        const val QUANTUM = Point.EPSILON
+
+        /**
+         * Capacity of caches shared by all algorithms of a run
+         */
+        const val DEFAULT_CAPACITY = 100000
+
+        private const val ENTRY_SIZE = 200L
+    }
+}
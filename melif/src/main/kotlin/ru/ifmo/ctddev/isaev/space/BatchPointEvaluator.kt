@@ -0,0 +1,92 @@
+package ru.ifmo.ctddev.isaev.space
+
+import ru.ifmo.ctddev.isaev.EvaluationContext
+import ru.ifmo.ctddev.isaev.evaluateEnsemble
+import ru.ifmo.ctddev.isaev.point.Point
+import ru.ifmo.ctddev.isaev.selectFeatures
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveAction
+
+/**
+ * Evaluates ensemble measures of many points at once as blocked product
+ * [number of points x number of measures] · [number of measures x number of features].
+ * Features are split into blocks small enough to stay in cache while all points are evaluated on them;
+ * blocks are processed in parallel
+ *
+ * @author iisaev
+ */
+class BatchPointEvaluator(private val dataSet: EvaluatedDataSet, // [number of measures x number of features]
+                          private val pool: ForkJoinPool) {
+
+    constructor(dataSet: EvaluatedDataSet) : this(dataSet, ForkJoinPool.commonPool())
+
+    private val featureCount = dataSet[0].size
+
+    /**
+     * @return ensemble measures [number of points x number of features]; same values as [evaluatePoint] gives
+     */
+    fun evaluate(points: List<Point>): List<DoubleArray> {
+        val result = List(points.size, { DoubleArray(featureCount) })
+        val weights = points.map { it.coordinates }
+        val blocks = (featureCount + FEATURE_BLOCK_SIZE - 1) / FEATURE_BLOCK_SIZE
+        forEachInPool(blocks) { block ->
+            val from = block * FEATURE_BLOCK_SIZE
+            val to = Math.min(from + FEATURE_BLOCK_SIZE, featureCount)
+            for (p in weights.indices) {
+                evaluateBlock(weights[p], result[p], from, to)
+            }
+        }
+        return result
+    }
+
+    /**
+     * @return for each point indices of [cutSize] features with greatest ensemble measure, max first
+     */
+    fun evaluateCuts(points: List<Point>, cutSize: Int): List<IntArray> {
+        return selectCuts(evaluate(points), cutSize)
+    }
+
+    /**
+     * @param evaluatedData ensemble measures [number of points x number of features]
+     * @return for each point indices of [cutSize] features with greatest ensemble measure, max first
+     */
+    fun selectCuts(evaluatedData: List<DoubleArray>, cutSize: Int): List<IntArray> {
+        val cuts = arrayOfNulls<IntArray>(evaluatedData.size)
+        forEachInPool(evaluatedData.size) { p ->
+            val context = EvaluationContext.current(featureCount)
+            selectFeatures(evaluatedData[p], context.featureIndices, cutSize, true)
+            cuts[p] = context.featureIndices.copyOf(cutSize)
+        }
+        return cuts.map { it!! }
+    }
+
+    private fun evaluateBlock(measureCosts: DoubleArray, result: DoubleArray, from: Int, to: Int) {
+        evaluateEnsemble(measureCosts, dataSet, result, from, to)
+    }
+
+    private fun forEachInPool(tasks: Int, action: (Int) -> Unit) {
+        if (tasks != 0) {
+            pool.invoke(IndexRangeAction(0, tasks, action))
+        }
+    }
+
+    private class IndexRangeAction(private val from: Int,
+                                   private val to: Int,
+                                   private val action: (Int) -> Unit) : RecursiveAction() {
+        override fun compute() {
+            if (to - from == 1) {
+                action(from)
+            } else {
+                val mid = (from + to) ushr 1
+                invokeAll(IndexRangeAction(from, mid, action), IndexRangeAction(mid, to, action))
+            }
+        }
+    }
+
+    companion object {
+        /**
+         * 4 measures x 1024 doubles = 32 Kb of measure values per block
+         */
+        const val FEATURE_BLOCK_SIZE = 1024
+    }
+}
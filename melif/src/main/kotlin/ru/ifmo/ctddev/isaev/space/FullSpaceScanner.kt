@@ -145,13 +145,12 @@ fun performDelaunayEnrichment(evaluatedDs: EvaluatedDataSet,
                               delaunay: IncrementalDelaunayTriangulator,
                               cache: CutCache,
                               geomFact: GeometryFactory,
-                              range: Array<Int>,
                               subDiv: QuadEdgeSubdivision,
                               cutSize: Int): Boolean {
 
     fun processInHomo(coord: Coordinate): RoaringBitmap {
         val point = Point(coord.x, coord.y, 1.0) //conversion from homogeneous to euclidean
-        return cache.compute(point, { processPoint(it, evaluatedDs, cutSize, range) })
+        return cache.compute(point, { processPoint(it, evaluatedDs, cutSize) })
     }
 
     val trianglesGeom = subDiv.getTriangles(geomFact) as GeometryCollection
@@ -288,6 +287,15 @@ fun calculateBitMap(bitsToSet: Iterable<Int>): RoaringBitmap {
     return result
 }
 
+fun calculateBitMap(bitsToSet: IntArray, size: Int): RoaringBitmap {
+    val result = RoaringBitmap()
+    for (i in 0 until size) {
+        result.add(bitsToSet[i])
+    }
+    result.runOptimize()
+    return result
+}
+
 fun processAllPointsChunk(xData: List<Point>,
                           dataSet: EvaluatedDataSet,
                           cutSize: Int)
@@ -295,15 +303,13 @@ fun processAllPointsChunk(xData: List<Point>,
     if (xData[0].coordinates.size != 2) {
         throw IllegalArgumentException("Only two-dimensioned points are supported")
     }
-    val evaluatedData = evaluatePoints(xData, dataSet)
-    val range = Array(evaluatedData[0].size, { it })
+    val batchEvaluator = BatchPointEvaluator(dataSet)
+    val evaluatedData = batchEvaluator.evaluate(xData)
     val lastFeatureInAllCuts = IntArray(evaluatedData.size)
-    val cutsForAllPoints = evaluatedData
-            .mapIndexed { i, featureMeasures ->
-                val comparator = kotlin.Comparator<Int> { o1, o2 -> compareValuesBy(o1, o2, { -featureMeasures[it] }) }
-                Arrays.sort(range, comparator)
-                lastFeatureInAllCuts[i] = range[cutSize - 1]
-                return@mapIndexed calculateBitMap(range.take(cutSize))
+    val cutsForAllPoints = batchEvaluator.selectCuts(evaluatedData, cutSize)
+            .mapIndexed { i, cut ->
+                lastFeatureInAllCuts[i] = cut[cutSize - 1]
+                return@mapIndexed calculateBitMap(cut, cutSize)
             }
     return Triple(evaluatedData, cutsForAllPoints, lastFeatureInAllCuts)
 }
@@ -312,33 +318,28 @@ fun processPoint(point: Point,
                  dataSet: EvaluatedDataSet,
                  cutSize: Int)
         : RoaringBitmap {
-    return processPoint(point, dataSet, cutSize, Array(dataSet[0].size, { it }))
-}
-
-fun processPoint(point: Point,
-                 dataSet: EvaluatedDataSet,
-                 cutSize: Int,
-                 range: Array<Int>)
-        : RoaringBitmap {
-    return calculateBitMap(processPointGetWholeCut(point, dataSet, cutSize, range))
+    val context = EvaluationContext.current(dataSet[0].size)
+    return calculateBitMap(selectCut(point, dataSet, cutSize, context), cutSize)
 }
 
 fun processPointGetWholeCut(point: Point,
                             dataSet: EvaluatedDataSet,
                             cutSize: Int)
         : List<Int> {
-    return processPointGetWholeCut(point, dataSet, cutSize, Array(dataSet[0].size, { it }))
+    val context = EvaluationContext.current(dataSet[0].size)
+    return selectCut(point, dataSet, cutSize, context).take(cutSize)
 }
 
-fun processPointGetWholeCut(point: Point,
-                            dataSet: EvaluatedDataSet,
-                            cutSize: Int,
-                            range: Array<Int>)
-        : List<Int> {
-    val featureMeasures = evaluatePoint(point, dataSet)
-    val comparator = kotlin.Comparator<Int> { o1, o2 -> compareValuesBy(o1, o2, { -featureMeasures[it] }) }
-    Arrays.sort(range, comparator)
-    return range.take(cutSize)
+/**
+ * @return [EvaluationContext.featureIndices] of given context with cut of the point in first [cutSize] positions
+ */
+fun selectCut(point: Point,
+              dataSet: EvaluatedDataSet,
+              cutSize: Int,
+              context: EvaluationContext)
+        : IntArray {
+    val featureMeasures = evaluatePoint(point, dataSet, context.ensembleScores)
+    return selectFeatures(featureMeasures, context.featureIndices, cutSize, true)
 }
 
 fun processAllPointsFastOld(xData: List<Point>,
@@ -350,22 +351,14 @@ fun processAllPointsFastOld(xData: List<Point>,
         throw IllegalArgumentException("Only two-dimensioned points are supported")
     }
     val evaluatedData = evaluatePoints(xData, dataSet, measures)
-    val range = Array(evaluatedData[0].size, { it })
-    val evaluatedDataWithNumbers = evaluatedData.map { Pair(it, range.clone()) }
-    val rawCutsForAllPoints = evaluatedDataWithNumbers
-            .map {
-                val featureNumbers = it.second
-                val featureMeasures = it.first
-                val comparator = kotlin.Comparator<Int> { o1, o2 -> compareValuesBy(o1, o2, { -featureMeasures[it] }) }
-                Arrays.sort(featureNumbers, comparator)
-                return@map Pair(featureMeasures, featureNumbers)
-            } //max first
-    val cuttingLineY = rawCutsForAllPoints
-            .map {
-                it.second[cutSize - 1]
+    val context = EvaluationContext.current(evaluatedData[0].size)
+    val cuttingLineY = ArrayList<Int>(evaluatedData.size)
+    val cutsForAllPoints = evaluatedData
+            .map { featureMeasures ->
+                val featureNumbers = selectFeatures(featureMeasures, context.featureIndices, cutSize, true) //max first
+                cuttingLineY.add(featureNumbers[cutSize - 1])
+                return@map calculateBitMap(featureNumbers, cutSize)
             }
-    val cutsForAllPoints = rawCutsForAllPoints
-            .map { calculateBitMap(it.second.take(cutSize)) }
     return Triple(evaluatedData, cuttingLineY, cutsForAllPoints)
 }
 
@@ -497,15 +490,8 @@ fun processAllPointsHd(xDataRaw: List<SpacePoint>,
     //val xData = angles.map { getPointOnUnitSphere(it) }
     val xData = xDataRaw.map { Point(it.point[0].toDouble() / it.delta, it.point[1].toDouble() / it.delta, 1.0) }
 
-    val evaluatedData = evaluatePoints(xData, dataSet)
-    return evaluatedData
-            .map { featureMeasures ->
-                val featureNumbers = Array(evaluatedData[0].size, { it })
-                val comparator = kotlin.Comparator<Int> { o1, o2 -> compareValuesBy(o1, o2, { -featureMeasures[it] }) }
-                Arrays.sort(featureNumbers, comparator)
-                val cut = featureNumbers.take(cutSize)
-                return@map calculateBitMap(cut)
-            } //max first
+    return BatchPointEvaluator(dataSet).evaluateCuts(xData, cutSize)
+            .map { cut -> calculateBitMap(cut, cutSize) } //max first
 }
 
 
@@ -3,6 +3,7 @@ package ru.ifmo.ctddev.isaev.space
 import ru.ifmo.ctddev.isaev.DataSetEvaluator
 import ru.ifmo.ctddev.isaev.FeatureDataSet
 import ru.ifmo.ctddev.isaev.RelevanceMeasure
+import ru.ifmo.ctddev.isaev.evaluateEnsemble
 import ru.ifmo.ctddev.isaev.point.Point
 import kotlin.math.abs
 import kotlin.math.cos
@@ -59,7 +60,7 @@ fun evaluateDataSet(dataSet: FeatureDataSet,
 fun evaluatePoints(xData: List<Point>,
                    ds: EvaluatedDataSet
 ): List<DoubleArray> {
-    return xData.map { point -> evaluatePoint(point, ds) }
+    return BatchPointEvaluator(ds).evaluate(xData)
 }
 
 fun evaluatePoints(xData: List<Point>,
@@ -67,7 +68,7 @@ fun evaluatePoints(xData: List<Point>,
                    measureClasses: Array<out RelevanceMeasure>
 ): List<DoubleArray> {
     val valuesForEachMeasure = evaluateDataSet(dataSet, measureClasses)
-    return xData.map { point -> evaluatePoint(point, valuesForEachMeasure) }
+    return BatchPointEvaluator(valuesForEachMeasure).evaluate(xData)
 }
 
 fun evaluatePoints(xData: List<Point>,
@@ -104,11 +105,14 @@ fun <T> calculateTime(block: () -> T): Pair<Long, T> {
 fun evaluatePoint(measureCosts: Point,
                   valuesForEachMeasure: EvaluatedDataSet // [number of measures x number of features]
 ): DoubleArray {
-    val result = DoubleArray(valuesForEachMeasure[0].size)
-    valuesForEachMeasure[0].indices.forEach { i ->
-        result[i] = measureCosts.coordinates.indices.sumByDouble { measureCosts.coordinates[it] * valuesForEachMeasure[it][i] }
-    }
-    return result
+    return evaluatePoint(measureCosts, valuesForEachMeasure, DoubleArray(valuesForEachMeasure[0].size))
+}
+
+fun evaluatePoint(measureCosts: Point,
+                  valuesForEachMeasure: EvaluatedDataSet, // [number of measures x number of features]
+                  result: DoubleArray // [number of features]
+): DoubleArray {
+    return evaluateEnsemble(measureCosts.coordinates, valuesForEachMeasure, result)
 }
 
 
@@ -15,7 +15,12 @@ abstract class DataSetSplitter(val testPercent: Int) {
         logger.info("Initialized dataset splitter with test percent $testPercent")
     }
 
-    abstract fun split(original: DataSet): List<DataSetPair>
+    abstract fun getFoldPlan(original: DataSet): FoldPlan
+
+    open fun split(original: DataSet): List<DataSetPair> {
+        return getFoldPlan(original).folds
+                .map { DataSetPair(original.toInstanceSet(it.trainIndices), original.toInstanceSet(it.testIndices)) }
+    }
 }
 
 class OrderSplitter(testPercent: Int, val order: List<Int>) : DataSetSplitter(testPercent) {
@@ -25,34 +30,124 @@ class OrderSplitter(testPercent: Int, val order: List<Int>) : DataSetSplitter(te
         }
     }
 
-    override fun split(original: DataSet): List<DataSetPair> {
+    @Volatile
+    private var foldPlan: FoldPlan? = null
+
+    override fun getFoldPlan(original: DataSet): FoldPlan {
+        val cached = foldPlan
+        if (cached != null && cached.instanceCount == original.getInstanceCount()) {
+            return cached
+        }
+        val result = createFoldPlan(original.getInstanceCount())
+        foldPlan = result
+        return result
+    }
+
+    private fun createFoldPlan(instanceCount: Int): FoldPlan {
+        if (order.size != instanceCount) {
+            throw IllegalArgumentException("Order of ${order.size} instances does not match dataset of $instanceCount instances")
+        }
         val folds = (100.0 / testPercent).toInt()
-        val instancesBeforeShuffle = ArrayList(original.toInstanceSet().instances)
-        val instances: MutableList<DataInstance> = ArrayList()
-        order.forEach { i -> instances.add(instancesBeforeShuffle[i]) }
-        val results = ArrayList<ArrayList<DataInstance>>()
+        val results = ArrayList<ArrayList<Int>>()
         IntStream.range(0, folds).forEach { results.add(ArrayList()) }
-        val pos = intArrayOf(0)
-        instances.forEach { inst ->
-            results[pos[0]].add(inst)
-            pos[0] = (pos[0] + 1) % folds
-        }
+        order.forEachIndexed { pos, i -> results[pos % folds].add(i) }
         val result = (0 until folds).map {
-            val train = ArrayList<DataInstance>()
-            val test = ArrayList<DataInstance>()
+            val train = ArrayList<Int>()
             for (j in 0 until folds) {
                 if (it != j) {
                     train.addAll(results[j])
-                } else {
-                    test.addAll(results[j])
                 }
             }
-            DataSetPair(InstanceDataSet(train), InstanceDataSet(test))
+            Fold(train.toIntArray(), results[it].toIntArray())
         }
         if (result.size != folds) {
             throw IllegalStateException("Invalid split")
         }
-        return result
+        return FoldPlan(instanceCount, result)
+    }
+}
+
+/**
+ * Repeated stratified k-fold split: in each of [repeats] rounds instances of every class are shuffled
+ * and dealt to folds one by one, so each fold keeps the class balance of the whole dataset.
+ * Split is fully determined by [seed]; the last [MAX_FOLD_PLANS] fold plans are shared by all splitters
+ * with same parameters
+ */
+class StratifiedSplitter(testPercent: Int,
+                         val repeats: Int,
+                         val seed: Long) : DataSetSplitter(testPercent) {
+
+    constructor(testPercent: Int, repeats: Int) : this(testPercent, repeats, 0L)
+
+    init {
+        if (repeats < 1) {
+            throw IllegalArgumentException("Number of repeats must be positive")
+        }
+    }
+
+    private val folds = (100.0 / testPercent).toInt()
+
+    @Volatile
+    private var lastPlan: Pair<List<Int>, FoldPlan>? = null
+
+    override fun getFoldPlan(original: DataSet): FoldPlan {
+        val classes = if (original is FeatureDataSet) original.classes else original.toInstanceSet().instances.map { it.clazz }
+        val last = lastPlan
+        if (last != null && last.first === classes) { // filtered datasets share classes list with original one
+            return last.second
+        }
+        val plan = synchronized(FOLD_PLANS) {
+            FOLD_PLANS.getOrPut(FoldPlanKey(classes, folds, repeats, seed), { createFoldPlan(classes) })
+        }
+        lastPlan = Pair(classes, plan)
+        return plan
+    }
+
+    private fun createFoldPlan(classes: List<Int>): FoldPlan {
+        val random = Random(seed)
+        val instancesByClass = classes.indices.groupBy { classes[it] }.toSortedMap()
+        instancesByClass.forEach { clazz, instances ->
+            if (instances.size < folds) {
+                logger.warn("Only {} instances of class {}; some of {} folds will not contain it", arrayOf(instances.size, clazz, folds))
+            }
+        }
+        val result = ArrayList<Fold>(repeats * folds)
+        repeat(repeats) {
+            val foldInstances = (0 until folds).map { ArrayList<Int>() }
+            var pos = 0
+            instancesByClass.values.forEach { instances ->
+                val shuffled = ArrayList(instances)
+                Collections.shuffle(shuffled, random)
+                shuffled.forEach { foldInstances[pos++ % folds].add(it) }
+            }
+            foldInstances.indices.forEach { testFold ->
+                val train = foldInstances.indices
+                        .filter { it != testFold }
+                        .flatMap { foldInstances[it] }
+                        .sorted()
+                result.add(Fold(train.toIntArray(), foldInstances[testFold].sorted().toIntArray()))
+            }
+        }
+        logger.info("Created stratified fold plan: {} repeats of {} folds on {} instances", arrayOf(repeats, folds, classes.size))
+        return FoldPlan(classes.size, result)
+    }
+
+    private data class FoldPlanKey(val classes: List<Int>,
+                                   val folds: Int,
+                                   val repeats: Int,
+                                   val seed: Long)
+
+    companion object {
+        const val MAX_FOLD_PLANS = 16
+
+        /**
+         * Fold plans in access order; the least recently used one is dropped when there are too many
+         */
+        private val FOLD_PLANS = object : LinkedHashMap<FoldPlanKey, FoldPlan>(16, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<FoldPlanKey, FoldPlan>): Boolean {
+                return size > MAX_FOLD_PLANS
+            }
+        }
     }
 }
 
@@ -65,21 +160,51 @@ class RandomSplitter(private val testPercent: Int,
     }
 
     private fun splitRandomly(original: DataSet): DataSetPair {
-        val testInstanceNumber = (original.getInstanceCount().toDouble() * testPercent).toInt() / 100
-        val selectedInstances = HashSet<Int>()
-        while (selectedInstances.size != testInstanceNumber) {
-            selectedInstances.add(random.nextInt(original.getInstanceCount()))
+        val instanceCount = original.getInstanceCount()
+        val testInstanceNumber = (instanceCount.toDouble() * testPercent).toInt() / 100
+        val instances = IntArray(instanceCount, { it })
+        // partial Fisher-Yates shuffle: random test instances are gathered at the end of array
+        for (i in instanceCount - 1 downTo instanceCount - testInstanceNumber) {
+            val j = random.nextInt(i + 1)
+            val tmp = instances[i]
+            instances[i] = instances[j]
+            instances[j] = tmp
         }
-        val instanceSet = original.toInstanceSet()
-        val trainInstances = ArrayList<DataInstance>(original.getInstanceCount() - testInstanceNumber)
-        val testInstances = ArrayList<DataInstance>(testInstanceNumber)
-        IntStream.range(0, original.getInstanceCount()).forEach { i ->
-            if (selectedInstances.contains(i)) {
-                testInstances.add(instanceSet.instances[i])
-            } else {
-                trainInstances.add(instanceSet.instances[i])
-            }
-        }
-        return DataSetPair(InstanceDataSet(trainInstances), InstanceDataSet(testInstances))
+        val trainInstances = instances.copyOfRange(0, instanceCount - testInstanceNumber)
+        val testInstances = instances.copyOfRange(instanceCount - testInstanceNumber, instanceCount)
+        trainInstances.sort()
+        testInstances.sort()
+        return DataSetPair(original.toInstanceSet(trainInstances), original.toInstanceSet(testInstances))
+    }
+}
+
+/**
+ * Indices of train and test instances of one fold
+ */
+class Fold(val trainIndices: IntArray,
+           val testIndices: IntArray) {
+
+    /**
+     * @return fold with the same test instances and [fraction] of train instances of each class, at least one;
+     * the subsample is determined by [seed]
+     */
+    fun subsample(classes: IntArray, fraction: Double, seed: Long): Fold {
+        val random = Random(seed)
+        val train = trainIndices.groupBy { classes[it] }.toSortedMap().values
+                .flatMap { instances ->
+                    val shuffled = instances.toMutableList()
+                    Collections.shuffle(shuffled, random)
+                    shuffled.take(Math.max(1, Math.ceil(fraction * instances.size).toInt()))
+                }
+                .toIntArray()
+        train.sort()
+        return Fold(train, testIndices)
     }
 }
+
+/**
+ * Assignment of dataset instances to folds; does not depend on selected features,
+ * so it is computed once and reused for all evaluated points
+ */
+class FoldPlan(val instanceCount: Int,
+               val folds: List<Fold>)
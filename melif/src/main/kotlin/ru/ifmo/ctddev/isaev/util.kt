@@ -29,8 +29,50 @@ open class SelectionResult(val selectedFeatures: List<Feature>,
     open fun betterThan(bestScore: SelectionResult): Boolean {
         return this.compareTo(bestScore) == 1
     }
+
+    /**
+     * True if evaluation was stopped as soon as the point could not beat the best result
+     */
+    open val isPruned: Boolean
+        get() = false
+
+    /**
+     * Share of train instances the point was scored with; scores of different fidelity are not comparable
+     */
+    open val fidelity: Double
+        get() = 1.0
+
+    val isFullFidelity: Boolean
+        get() = fidelity >= 1.0
 }
 
+/**
+ * Result of a point whose evaluation was stopped early; [score] is the upper bound of its real score,
+ * which is not greater than score of the best result at the moment of pruning.
+ * [fidelity] is the one the point was being evaluated at
+ */
+class PrunedSelectionResult @JvmOverloads constructor(selectedFeatures: List<Feature>, point: Point, upperBound: Double,
+                                                      override val fidelity: Double = 1.0)
+    : SelectionResult(selectedFeatures, point, upperBound) {
+
+    override val isPruned: Boolean
+        get() = true
+
+    /**
+     * Real score is unknown, so the point is never taken as an improvement
+     */
+    override fun betterThan(bestScore: SelectionResult): Boolean {
+        return false
+    }
+}
+
+/**
+ * Result of a point scored with classifiers trained on [fidelity] share of train instances
+ */
+class LowFidelitySelectionResult(selectedFeatures: List<Feature>, point: Point, score: Double,
+                                 override val fidelity: Double)
+    : SelectionResult(selectedFeatures, point, score)
+
 class NoneSelectionResult : SelectionResult(emptyList(), Point(), -1.0) {
     override fun compareTo(other: SelectionResult): Int {
         return -1
@@ -0,0 +1,223 @@
+package ru.ifmo.ctddev.isaev
+
+import org.junit.Assert
+import org.junit.Test
+import java.util.*
+
+
+/**
+ * @author iisaev
+ */
+class ClassifiersKtTest {
+    private val random = Random(42)
+
+    private val classes = List(40, { it % 2 })
+
+    private val dataSet = FeatureDataSet(
+            (1..5).map { f -> Feature("feature $f", classes.map { it * f + random.nextInt(3) }) },
+            classes,
+            "synthetic"
+    )
+
+    private val cuts = listOf(listOf(0, 1), listOf(0, 1, 2), listOf(1, 2), listOf(1, 2, 3, 4), listOf(4))
+
+    @Test
+    fun testHeaderIsSharedByWidth() {
+        Assert.assertSame(getHeader(5), getHeader(5))
+        Assert.assertEquals(6, getHeader(5).numAttributes())
+        Assert.assertEquals(0, getHeader(5).classIndex())
+    }
+
+    @Test
+    fun testColumnBuilderMatchesInstanceBuilder() {
+        val indices = intArrayOf(3, 0, 17, 39)
+        val fromColumns = toInstances(dataSet, indices)
+        val fromInstances = toInstances(dataSet.toInstanceSet(indices))
+        Assert.assertEquals(indices.size, fromColumns.size)
+        fromColumns.indices.forEach {
+            Assert.assertArrayEquals(fromInstances[it].toDoubleArray(), fromColumns[it].toDoubleArray(), 0.0)
+        }
+    }
+
+    @Test
+    fun testTrainOnFoldIndices() {
+        val plan = OrderSplitter(20, classes.indices.toList()).getFoldPlan(dataSet)
+        plan.folds.forEach { fold ->
+            val expected = Classifiers.SVM.newClassifier()
+                    .train(dataSet.toInstanceSet(fold.trainIndices))
+                    .test(dataSet.toInstanceSet(fold.testIndices))
+            val actual = Classifiers.SVM.newClassifier()
+                    .train(dataSet, fold.trainIndices)
+                    .test(dataSet, fold.testIndices)
+            Assert.assertEquals(expected, actual)
+        }
+    }
+
+    @Test
+    fun testWekaProbabilitiesReachConfusionMatrix() {
+        val plan = StratifiedSplitter(20, 1).getFoldPlan(dataSet)
+        plan.folds.forEach { fold ->
+            val matrix = getConfusionMatrix(Classifiers.NAIVE_BAYES, dataSet, fold)
+            val predictions = Classifiers.NAIVE_BAYES.newClassifier()
+                    .train(dataSet, fold.trainIndices)
+                    .predict(dataSet, fold.testIndices, IntArray(fold.testIndices.size))
+            val expected = ConfusionMatrix().add(dataSet.classValues, fold.testIndices, predictions)
+            Assert.assertEquals(expected.toString(), matrix.toString())
+            Assert.assertFalse(matrix.auc().isNaN())
+        }
+        val linear = getConfusionMatrix(Classifiers.LINEAR_SVM, dataSet, plan.folds[0])
+        Assert.assertTrue(linear.auc().isNaN()) // no probabilities
+    }
+
+    @Test
+    fun testReusedLearnerPredictsAsFreshOne() {
+        val plan = OrderSplitter(20, classes.indices.toList()).getFoldPlan(dataSet)
+        listOf(Classifiers.SVM, Classifiers.J48, Classifiers.KNN, Classifiers.NAIVE_BAYES, Classifiers.RAND_FOREST,
+                Classifiers.HOEFD).forEach { classifiers ->
+            val reused = classifiers.newClassifier().reusable()
+            cuts.forEach { cut ->
+                val cutDs = FeatureDataSet(cut.map { dataSet.features[it] }, classes, dataSet.name)
+                plan.folds.forEach { fold ->
+                    val expected = classifiers.newClassifier()
+                            .train(cutDs, fold.trainIndices)
+                            .predict(cutDs, fold.testIndices, IntArray(fold.testIndices.size))
+                    val actual = reused
+                            .train(cutDs, fold.trainIndices)
+                            .predict(cutDs, fold.testIndices, IntArray(fold.testIndices.size))
+                    val pooled = classifiers.pooledClassifier()
+                            .train(cutDs, fold.trainIndices)
+                            .predict(cutDs, fold.testIndices, IntArray(fold.testIndices.size))
+                    Assert.assertArrayEquals("$classifiers on $cut", expected, actual)
+                    Assert.assertArrayEquals("$classifiers on $cut", expected, pooled)
+                }
+            }
+        }
+    }
+
+    @Test
+    fun testLinearSvmMatchesSmo() {
+        val plan = StratifiedSplitter(20, 1).getFoldPlan(dataSet)
+        val score = F1Score()
+        plan.folds.forEach { fold ->
+            val expected = fold.testIndices.map { classes[it] }
+            val smo = Classifiers.SVM.newClassifier()
+                    .train(dataSet, fold.trainIndices)
+                    .test(dataSet, fold.testIndices)
+            val linear = Classifiers.LINEAR_SVM.newClassifier()
+                    .train(dataSet, fold.trainIndices)
+                    .test(dataSet, fold.testIndices)
+            Assert.assertEquals(score.calculate(expected, smo.map { it.toInt() }),
+                    score.calculate(expected, linear.map { it.toInt() }), 0.1)
+        }
+    }
+
+    @Test
+    fun testLinearSvmWarmStartFromNeighbouringCut() {
+        val fold = OrderSplitter(20, classes.indices.toList()).getFoldPlan(dataSet).folds[0]
+        val svm = LinearSvm(epsilon = 1E-6)
+        var previous: LinearSvmModel? = null
+        cuts.forEach { cut ->
+            val cutDs = FeatureDataSet(cut.map { dataSet.features[it] }, classes, dataSet.name)
+            val cold = svm.train(cutDs, fold.trainIndices, null)
+            val warm = svm.train(cutDs, fold.trainIndices, previous?.alphas)
+            Assert.assertArrayEquals("Cut $cut", cold.weights, warm.weights, 1E-2)
+            Assert.assertEquals("Cut $cut", cold.bias, warm.bias, 1E-2)
+            Assert.assertArrayEquals(cold.weights, (svm.train(cutDs, fold.trainIndices) as LinearSvmModel).weights, 0.0)
+            previous = warm
+        }
+    }
+
+    @Test
+    fun testDiscreteNaiveBayesTablesMatchDirectScoring() {
+        val plan = OrderSplitter(20, classes.indices.toList()).getFoldPlan(dataSet)
+        plan.folds.forEach { fold ->
+            val trained = Classifiers.DISCRETE_NAIVE_BAYES.newClassifier().train(dataSet.take(3), fold.trainIndices)
+            Assert.assertEquals(trained.test(dataSet.take(3).toInstanceSet(fold.testIndices)),
+                    trained.test(dataSet.take(3), fold.testIndices))
+        }
+    }
+
+    @Test
+    fun testDiscreteNaiveBayesIgnoresTestValues() {
+        val fold = OrderSplitter(20, classes.indices.toList()).getFoldPlan(dataSet).folds[0]
+        val test = fold.testIndices.toSet()
+        val changed = FeatureDataSet(
+                dataSet.features.map { feature ->
+                    Feature(feature.name, feature.values.mapIndexed { i, v -> if (i in test) 100 + i else v })
+                },
+                classes,
+                dataSet.name
+        )
+        val expected = Classifiers.DISCRETE_NAIVE_BAYES.newClassifier()
+                .train(dataSet, fold.trainIndices) as DiscreteNaiveBayesModel
+        val actual = Classifiers.DISCRETE_NAIVE_BAYES.newClassifier()
+                .train(changed, fold.trainIndices) as DiscreteNaiveBayesModel
+        expected.likelihoods.forEachIndexed { f, likelihoods ->
+            Assert.assertEquals(likelihoods.logRatios, actual.likelihoods[f].logRatios)
+            Assert.assertEquals(likelihoods.unseen, actual.likelihoods[f].unseen, 0.0)
+        }
+    }
+
+    @Test
+    fun testDiscreteNaiveBayesTablesAreShared() {
+        val fold = OrderSplitter(20, classes.indices.toList()).getFoldPlan(dataSet).folds[0]
+        val first = DiscreteNaiveBayes().train(dataSet.take(3), fold.trainIndices) as DiscreteNaiveBayesModel
+        val second = DiscreteNaiveBayes().train(dataSet.take(2), fold.trainIndices) as DiscreteNaiveBayesModel
+        second.likelihoods.forEachIndexed { f, likelihoods -> Assert.assertSame(first.likelihoods[f], likelihoods) }
+    }
+
+    @Test
+    fun testIncrementalKnnMatchesFullRecomputation() {
+        val fold = OrderSplitter(20, classes.indices.toList()).getFoldPlan(dataSet).folds[0]
+        cuts.forEach { cut ->
+            val cutDs = FeatureDataSet(cut.map { dataSet.features[it] }, classes, dataSet.name)
+            val incremental = Classifiers.INCREMENTAL_KNN.newClassifier()
+                    .train(cutDs, fold.trainIndices)
+                    .test(cutDs, fold.testIndices)
+            val full = Classifiers.INCREMENTAL_KNN.newClassifier()
+                    .train(cutDs.toInstanceSet(fold.trainIndices))
+                    .test(cutDs.toInstanceSet(fold.testIndices))
+            Assert.assertEquals("Cut $cut", full, incremental)
+        }
+    }
+
+    @Test
+    fun testGramSvmMatchesLinearSvm() {
+        val fold = OrderSplitter(20, classes.indices.toList()).getFoldPlan(dataSet).folds[1]
+        cuts.forEach { cut ->
+            val cutDs = FeatureDataSet(cut.map { dataSet.features[it] }, classes, dataSet.name)
+            val gram = GramSvm(epsilon = 1E-6).train(cutDs, fold.trainIndices) as LinearSvmModel
+            val linear = LinearSvm(epsilon = 1E-6).train(cutDs, fold.trainIndices, null)
+            Assert.assertArrayEquals("Cut $cut", linear.weights, gram.weights, 1E-2)
+            Assert.assertEquals("Cut $cut", linear.bias, gram.bias, 1E-2)
+        }
+    }
+
+    @Test
+    fun testGramSvmDoesNotDependOnHistory() {
+        val fold = OrderSplitter(20, classes.indices.toList()).getFoldPlan(dataSet).folds[1]
+        val target = FeatureDataSet(listOf(1, 2).map { dataSet.features[it] }, classes, dataSet.name)
+        val predictions = listOf(listOf(cuts[0], cuts[3]), listOf(cuts[4])).map { history ->
+            val svm = GramSvm()
+            history.forEach { cut ->
+                svm.train(FeatureDataSet(cut.map { dataSet.features[it] }, classes, dataSet.name), fold.trainIndices)
+            }
+            svm.train(target, fold.trainIndices).predict(target, fold.testIndices, IntArray(fold.testIndices.size))
+        }
+        Assert.assertArrayEquals(predictions[0], predictions[1])
+        val cold = GramSvm().train(target, fold.trainIndices, null)
+        val warm = GramSvm().train(target, fold.trainIndices, cold.alphas)
+        Assert.assertArrayEquals(cold.predict(target, fold.testIndices, IntArray(fold.testIndices.size)),
+                warm.predict(target, fold.testIndices, IntArray(fold.testIndices.size)))
+    }
+
+    @Test
+    fun testBatchPredictionMatchesTest() {
+        val fold = OrderSplitter(20, classes.indices.toList()).getFoldPlan(dataSet).folds[2]
+        listOf(Classifiers.SVM, Classifiers.RAND_FOREST, Classifiers.LINEAR_SVM, Classifiers.INCREMENTAL_KNN).forEach {
+            val trained = it.newClassifier().train(dataSet, fold.trainIndices)
+            val expected = trained.test(dataSet, fold.testIndices).map { Math.round(it).toInt() }
+            Assert.assertEquals(it.name, expected, trained.predict(dataSet, fold.testIndices, IntArray(fold.testIndices.size)).toList())
+        }
+    }
+}
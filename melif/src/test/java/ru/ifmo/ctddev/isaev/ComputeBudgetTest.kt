@@ -0,0 +1,44 @@
+package ru.ifmo.ctddev.isaev
+
+import org.junit.Assert
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+
+/**
+ * @author iisaev
+ */
+class ComputeBudgetTest {
+
+    @Test(timeout = 30000)
+    fun testSearchQuotaIsRespectedWithFoldsInSharedPool() {
+        val searchQuota = ComputeBudget.getQuota(ComputeBudget.Layer.SEARCH)
+        val search = ComputeBudget.newExecutor(ComputeBudget.Layer.SEARCH)
+        val folds = ComputeBudget.getPool()
+        val runningPoints = AtomicInteger()
+        val maxPoints = AtomicInteger()
+        val points = 4 * searchQuota
+        val pointsLatch = CountDownLatch(points)
+        (0 until points).forEach {
+            search.execute {
+                maxPoints.accumulateAndGet(runningPoints.incrementAndGet(), { a, b -> Math.max(a, b) })
+                val foldsLatch = CountDownLatch(5)
+                (0 until 5).forEach {
+                    folds.execute {
+                        Thread.sleep(1)
+                        foldsLatch.countDown()
+                    }
+                }
+                ComputeBudget.await(foldsLatch) // blocks pool thread; must not starve fold tasks
+                runningPoints.decrementAndGet()
+                pointsLatch.countDown()
+            }
+        }
+        pointsLatch.await()
+        search.shutdown()
+        Assert.assertTrue(search.awaitTermination(1, TimeUnit.SECONDS))
+        Assert.assertTrue(maxPoints.get() <= searchQuota)
+    }
+}
@@ -0,0 +1,45 @@
+package ru.ifmo.ctddev.isaev
+
+import java.util.*
+
+
+/**
+ * Compares [evaluateEnsemble] with straightforward feature-by-feature summation
+ *
+ * @author iisaev
+ */
+private const val FEATURES = 200000
+
+private const val WARMUP = 200
+
+private const val ITERATIONS = 1000
+
+private fun evaluateByFeature(measureCosts: DoubleArray, valuesForEachMeasure: List<DoubleArray>, result: DoubleArray) {
+    for (f in result.indices) {
+        var sum = 0.0
+        for (m in measureCosts.indices) {
+            sum += measureCosts[m] * valuesForEachMeasure[m][f]
+        }
+        result[f] = sum
+    }
+}
+
+private fun measure(name: String, action: () -> Unit) {
+    repeat(WARMUP) { action() }
+    val start = System.nanoTime()
+    repeat(ITERATIONS) { action() }
+    val nanos = (System.nanoTime() - start).toDouble() / ITERATIONS
+    println(String.format("%-12s %10.1f us/point %6.2f ns/feature", name, nanos / 1000, nanos / FEATURES))
+}
+
+fun main(args: Array<String>) {
+    val random = Random(42)
+    listOf(2, 4, 7).forEach { measureCount ->
+        val measureCosts = DoubleArray(measureCount, { random.nextDouble() })
+        val valuesForEachMeasure = List(measureCount, { DoubleArray(FEATURES, { random.nextDouble() }) })
+        val result = DoubleArray(FEATURES)
+        println("$measureCount measures, $FEATURES features")
+        measure("by feature") { evaluateByFeature(measureCosts, valuesForEachMeasure, result) }
+        measure("by measure") { evaluateEnsemble(measureCosts, valuesForEachMeasure, result) }
+    }
+}
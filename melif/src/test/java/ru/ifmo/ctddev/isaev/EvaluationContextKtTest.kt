@@ -0,0 +1,61 @@
+package ru.ifmo.ctddev.isaev
+
+import org.junit.Assert
+import org.junit.Test
+import java.util.*
+
+
+/**
+ * @author iisaev
+ */
+class EvaluationContextKtTest {
+
+    @Test
+    fun testSelectFeaturesMatchesStableSort() {
+        val random = Random(42)
+        listOf(1, 5, 17, 100, 1000).forEach { size ->
+            val scores = DoubleArray(size, { random.nextInt(size / 2 + 1).toDouble() }) // many ties
+            listOf(0, 1, size / 3, size).forEach { count ->
+                listOf(true, false).forEach { descending ->
+                    val expected = scores.indices
+                            .sortedBy { if (descending) -scores[it] else scores[it] }
+                            .take(count)
+                    val actual = selectFeatures(scores, IntArray(size), count, descending).take(count)
+                    Assert.assertEquals("size $size, count $count, descending $descending", expected, actual)
+                }
+            }
+        }
+    }
+
+    @Test
+    fun testEvaluateEnsemble() {
+        val valuesForEachMeasure = listOf(doubleArrayOf(1.0, 2.0, 3.0), doubleArrayOf(0.5, 0.0, 1.0))
+        val result = evaluateEnsemble(doubleArrayOf(0.5, 2.0), valuesForEachMeasure, DoubleArray(3))
+        Assert.assertArrayEquals(doubleArrayOf(1.5, 1.0, 3.5), result, 1E-9)
+    }
+
+    @Test
+    fun testEvaluateEnsembleMatchesFeatureByFeatureSum() {
+        val random = Random(42)
+        (1..9).forEach { measureCount ->
+            val measureCosts = DoubleArray(measureCount, { random.nextDouble() })
+            val valuesForEachMeasure = List(measureCount, { DoubleArray(37, { random.nextDouble() }) })
+            val expected = DoubleArray(37, { f ->
+                measureCosts.indices.sumByDouble { measureCosts[it] * valuesForEachMeasure[it][f] }
+            })
+            val result = DoubleArray(37, { -1.0 })
+            evaluateEnsemble(measureCosts, valuesForEachMeasure, result, 5, 30)
+            (0 until 37).forEach {
+                Assert.assertEquals("measures $measureCount, feature $it", if (it in 5 until 30) expected[it] else -1.0, result[it], 0.0)
+            }
+        }
+    }
+
+    @Test
+    fun testContextIsReusedByThread() {
+        val first = EvaluationContext.current(10)
+        val second = EvaluationContext.current(10)
+        Assert.assertSame(first.ensembleScores, second.ensembleScores)
+        Assert.assertEquals(20, EvaluationContext.current(20).featureIndices.size)
+    }
+}
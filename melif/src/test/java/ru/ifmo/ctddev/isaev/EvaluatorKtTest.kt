@@ -0,0 +1,355 @@
+package ru.ifmo.ctddev.isaev
+
+import org.junit.Assert
+import org.junit.Test
+import ru.ifmo.ctddev.isaev.feature.measure.VDM
+import ru.ifmo.ctddev.isaev.melif.MeLiF
+import ru.ifmo.ctddev.isaev.melif.impl.BasicMeLiF
+import ru.ifmo.ctddev.isaev.melif.impl.MultiArmedBanditMeLiF
+import ru.ifmo.ctddev.isaev.melif.impl.ParallelMeLiF
+import ru.ifmo.ctddev.isaev.melif.impl.PriorityQueueMeLiF
+import ru.ifmo.ctddev.isaev.point.Point
+import ru.ifmo.ctddev.isaev.results.RunBudget
+import ru.ifmo.ctddev.isaev.results.RunStats
+import java.io.File
+import java.util.*
+import java.util.concurrent.AbstractExecutorService
+import java.util.concurrent.Callable
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+
+/**
+ * @author iisaev
+ */
+class EvaluatorKtTest {
+    private val random = Random(42)
+
+    private val classes = List(50, { it % 2 })
+
+    private val dataSet = FeatureDataSet(
+            (1..20).map { f -> Feature("feature $f", classes.map { it * (f % 3) + random.nextInt(4) }) },
+            classes,
+            "synthetic"
+    )
+
+    private val measures = arrayOf(VDM(), SpearmanRankCorrelation())
+
+    private val points = listOf(Point(1.0, 0.0), Point(0.0, 1.0), Point(1.0, 1.0), Point(0.3, 0.7))
+
+    private fun newEvaluator(parallel: Boolean): FoldsEvaluator {
+        val filter = PreferredSizeFilter(5)
+        val splitter = OrderSplitter(20, classes.indices.toList())
+        return if (parallel) {
+            ParallelEvaluator(Classifiers.LINEAR_SVM, filter, splitter, F1Score())
+        } else {
+            SequentalEvaluator(Classifiers.LINEAR_SVM, filter, splitter, F1Score())
+        }
+    }
+
+    private fun newStats(evaluator: FoldsEvaluator) = RunStats(AlgorithmConfig(0.1, evaluator, measures), dataSet, "test")
+
+    @Test(timeout = 30000)
+    fun testForkJoinFoldsMatchSequential() {
+        val sequential = newEvaluator(false)
+        val parallel = newEvaluator(true)
+        val expected = points.map { sequential.getSelectionResult(dataSet, it, newStats(sequential)).score }
+        val stats = newStats(parallel)
+        // points are evaluated by workers of the same pool that runs their folds
+        val actual = ComputeBudget.getPool()
+                .invokeAll(points.map { Callable { parallel.getSelectionResult(dataSet, it, stats).score } })
+                .map { it.get() }
+        Assert.assertEquals(expected, actual)
+    }
+
+    @Test(timeout = 30000)
+    fun testFoldPlanEvaluationMatchesSplitInstanceSets() {
+        val filter = PreferredSizeFilter(5)
+        val splitter = OrderSplitter(20, classes.indices.toList())
+        listOf(Classifiers.SVM, Classifiers.LINEAR_SVM).forEach { classifiers ->
+            val evaluator = SequentalEvaluator(classifiers, filter, splitter, F1Score())
+            points.forEach { point ->
+                val filteredDs = filter.filterDataSet(dataSet, point, measures)
+                val expected = splitter.split(filteredDs).map { evaluator.getScore(it) }.average()
+                val actual = evaluator.getSelectionResult(dataSet, point, newStats(evaluator)).score
+                Assert.assertEquals("$classifiers at $point", expected, actual, 1E-12)
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    fun testAsyncEvaluationMatchesSequential() {
+        val sequential = newEvaluator(false)
+        val async = newEvaluator(false)
+        async.resultCache = null
+        val executor = Executors.newSingleThreadExecutor()
+        async.asyncExecutor = executor
+        val expected = points.map { sequential.getSelectionResult(dataSet, it, newStats(sequential)).score }
+        val stats = newStats(async)
+        // all points are in flight at once on a single thread
+        val futures = points.map { async.evaluateAsync(dataSet, it, stats) }
+        Assert.assertEquals(expected, futures.map { it.join().score })
+        Assert.assertEquals(points.size.toLong(), stats.visitedPoints)
+        executor.shutdown()
+    }
+
+    @Test
+    fun testAsyncEvaluationUsesOverriddenEvaluate() {
+        val evaluator = object : FoldsEvaluator("Constant", Classifiers.LINEAR_SVM, OrderSplitter(20, classes.indices.toList()),
+                PreferredSizeFilter(5), F1Score()) {
+            override fun evaluate(dataSet: DataSet, point: Point, stats: RunStats, measures: Array<out RelevanceMeasure>): SelectionResult {
+                return SelectionResult(emptyList(), point, 0.5)
+            }
+        }
+        Assert.assertEquals(0.5, evaluator.evaluateAsync(dataSet, points[0], newStats(evaluator)).join().score, 0.0)
+    }
+
+    @Test
+    fun testRacingPrunesHopelessPoints() {
+        val evaluator = newEvaluator(false)
+        evaluator.racing = true
+        val stats = newStats(evaluator)
+        stats.updateBestResult(SelectionResult(emptyList(), Point(1.0, 1.0), 1.0))
+        val result = evaluator.getSelectionResult(dataSet, points[0], stats)
+        Assert.assertTrue(result.isPruned)
+        Assert.assertEquals(1L, stats.prunedPoints)
+        Assert.assertEquals(1.0, stats.bestResult.score, 0.0)
+    }
+
+    @Test
+    fun testPrunedResultIsNotAnImprovement() {
+        val pruned = PrunedSelectionResult(emptyList(), points[0], 0.8)
+        Assert.assertFalse(pruned.betterThan(SelectionResult(emptyList(), points[1], 0.5)))
+        Assert.assertTrue(SelectionResult(emptyList(), points[1], 0.5).betterThan(SelectionResult(emptyList(), points[2], 0.4)))
+    }
+
+    /**
+     * Parallel evaluator whose tasks run only when they are drained from [tasks]
+     */
+    private fun newQueuedEvaluator(tasks: Queue<Runnable>): FoldsEvaluator {
+        val executor = object : AbstractExecutorService() {
+            override fun execute(command: Runnable) {
+                tasks.add(command)
+            }
+
+            override fun shutdown() = Unit
+
+            override fun shutdownNow(): List<Runnable> = emptyList()
+
+            override fun isShutdown() = false
+
+            override fun isTerminated() = false
+
+            override fun awaitTermination(timeout: Long, unit: TimeUnit) = true
+        }
+        val evaluator = ParallelEvaluator(Classifiers.LINEAR_SVM, PreferredSizeFilter(5),
+                OrderSplitter(20, classes.indices.toList()), executor, F1Score())
+        evaluator.asyncExecutor = executor
+        return evaluator
+    }
+
+    @Test
+    fun testConcurrentRequestsShareEvaluation() {
+        val tasks = ArrayDeque<Runnable>()
+        val evaluator = newQueuedEvaluator(tasks)
+        val cache = SelectionResultCache(10)
+        evaluator.resultCache = cache
+        val stats = newStats(evaluator)
+        val first = evaluator.evaluateAsync(dataSet, Point(0.3, 0.7), stats)
+        val second = evaluator.evaluateAsync(dataSet, Point(0.3, 0.7), stats)
+        Assert.assertEquals(1L, cache.inFlightHits)
+        var evaluatedTasks = 0
+        while (!tasks.isEmpty()) {
+            tasks.poll().run()
+            ++evaluatedTasks
+        }
+        Assert.assertEquals(1 + 5, evaluatedTasks) // filtering and folds of one evaluation
+        Assert.assertSame(first.join(), second.join())
+        Assert.assertSame(first.join(), evaluator.getSelectionResult(dataSet, Point(0.3, 0.7), stats))
+        Assert.assertEquals(1L, cache.hits)
+    }
+
+    @Test
+    fun testCancelledEvaluationStopsBeforeFolds() {
+        val tasks = ArrayDeque<Runnable>()
+        val evaluator = newQueuedEvaluator(tasks)
+        evaluator.resultCache = SelectionResultCache(10)
+        val stats = newStats(evaluator)
+        val first = evaluator.evaluateAsync(dataSet, Point(0.3, 0.7), stats)
+        val second = evaluator.evaluateAsync(dataSet, Point(0.3, 0.7), stats)
+        first.cancel(false)
+        tasks.poll().run() // filtering
+        second.cancel(false)
+        while (!tasks.isEmpty()) {
+            tasks.poll().run()
+        }
+        Assert.assertEquals(0L, stats.visitedPoints)
+        val third = evaluator.evaluateAsync(dataSet, Point(0.3, 0.7), stats)
+        while (!tasks.isEmpty()) {
+            tasks.poll().run()
+        }
+        Assert.assertFalse(third.join().isPruned)
+        Assert.assertEquals(1L, stats.visitedPoints)
+    }
+
+    @Test(timeout = 60000)
+    fun testSpeculativeDescendMatchesSequential() {
+        val start = arrayOf(Point(1.0, 1.0))
+        val sequential = BasicMeLiF(AlgorithmConfig(0.1, newEvaluator(false), measures), dataSet).run(start)
+        val melif = BasicMeLiF(AlgorithmConfig(0.1, newEvaluator(false), measures), dataSet)
+        melif.isSpeculative = true
+        val speculative = melif.run(start)
+        Assert.assertEquals(sequential.bestResult.score, speculative.bestResult.score, 0.0)
+        Assert.assertEquals(sequential.bestResult.point, speculative.bestResult.point)
+    }
+
+    @Test(timeout = 60000)
+    fun testSpeculativeDescendSkipsVisitedPoints() {
+        val delegate = newEvaluator(false)
+        val requested = Collections.synchronizedList(ArrayList<List<Double>>())
+        val evaluator = object : FoldsEvaluator("Recording", delegate.classifiers, delegate.dataSetSplitter,
+                delegate.dataSetFilter, F1Score()) {
+            override fun evaluate(dataSet: DataSet, point: Point, stats: RunStats,
+                                  measures: Array<out RelevanceMeasure>): SelectionResult {
+                requested.add(point.coordinates.toList())
+                return delegate.getSelectionResult(dataSet, point, stats, measures)
+            }
+        }
+        evaluator.asyncExecutor = Executor { it.run() }
+        val melif = BasicMeLiF(AlgorithmConfig(1.0, evaluator, measures), dataSet)
+        melif.isSpeculative = true
+        melif.run(arrayOf(Point(1.0, 1.0)))
+        Assert.assertTrue(requested.size > 5) // the descent moved at least once
+        Assert.assertEquals(requested.size, requested.distinct().size)
+    }
+
+    @Test(timeout = 60000)
+    fun testRunStopsWhenBudgetIsExhausted() {
+        val melif = BasicMeLiF(AlgorithmConfig(0.1, newEvaluator(false), measures), dataSet)
+        val stats = melif.run("budget", arrayOf(Point(1.0, 1.0)), 0, RunBudget(null, Long.MAX_VALUE, 12))
+        Assert.assertEquals(12L, stats.trainings)
+        Assert.assertTrue(stats.isStopped)
+        Assert.assertFalse(stats.bestResult.isPruned)
+        Assert.assertEquals(2L, stats.visitedPoints - stats.prunedPoints) // 5 folds per point
+    }
+
+    @Test(timeout = 60000)
+    fun testBudgetExhaustedWithinFirstPoint() {
+        val budget = RunBudget(null, Long.MAX_VALUE, 1)
+        val start = arrayOf(Point(1.0, 1.0))
+        val config = AlgorithmConfig(0.1, newEvaluator(false), measures)
+        listOf<MeLiF>(BasicMeLiF(config, dataSet), ParallelMeLiF(config, dataSet, 2),
+                PriorityQueueMeLiF(config, dataSet, 2), MultiArmedBanditMeLiF(config, dataSet, 2, 3)).forEach { melif ->
+            val stats = melif.run("budget", start, 10, budget)
+            Assert.assertTrue(stats.isStopped)
+            Assert.assertNull(stats.bestResult)
+            Assert.assertEquals(0.0, stats.score, 0.0)
+            Assert.assertSame(RunBudget.UNLIMITED, melif.budget) // the budget applies to the run only
+        }
+    }
+
+    @Test(timeout = 60000)
+    fun testSuccessiveHalvingEvaluatesOnlySurvivorsFully() {
+        val evaluator = newEvaluator(false)
+        evaluator.resultCache = null
+        evaluator.minFidelity = 1.0 / 9
+        val stats = newStats(evaluator)
+        val candidates = (0 until 9).map { Point(Math.cos(it * 0.15), Math.sin(it * 0.15)) }
+        val results = evaluator.evaluateAll(dataSet, candidates, stats)
+        Assert.assertEquals(1, results.count { it != null })
+        Assert.assertEquals(12L, stats.lowFidelityPoints) // 9 points at 1/9 and 3 points at 1/3
+        Assert.assertEquals(1L, stats.visitedPoints)
+        Assert.assertTrue(stats.bestResult.isFullFidelity)
+        Assert.assertSame(results.first { it != null }, stats.bestResult)
+    }
+
+    @Test(timeout = 30000)
+    fun testStoppedLowFidelityResultKeepsItsFidelity() {
+        val evaluator = newEvaluator(false)
+        val stats = RunStats(AlgorithmConfig(0.1, evaluator, measures), dataSet, "test", RunBudget(null, Long.MAX_VALUE, 2))
+        val result = evaluator.evaluateAtFidelity(dataSet, Point(1.0, 1.0), stats, measures, 1.0 / 3)
+        Assert.assertTrue(result.isPruned)
+        Assert.assertEquals(1.0 / 3, result.fidelity, 0.0)
+        Assert.assertEquals(1L, stats.lowFidelityPoints)
+        Assert.assertEquals(0L, stats.visitedPoints)
+        Assert.assertEquals(0L, stats.prunedPoints)
+    }
+
+    @Test(timeout = 30000)
+    fun testPrunedLowFidelityResultsAreNotPromoted() {
+        val evaluator = newEvaluator(false)
+        evaluator.minFidelity = 1.0 / 9
+        evaluator.asyncExecutor = Executor { it.run() }
+        val stats = RunStats(AlgorithmConfig(0.1, evaluator, measures), dataSet, "test", RunBudget(null, Long.MAX_VALUE, 12))
+        val candidates = (0 until 9).map { Point(Math.cos(it * 0.15), Math.sin(it * 0.15)) }
+        val results = evaluator.evaluateAll(dataSet, candidates, stats)
+        // 5 folds per point: only the first two points are scored before the budget is over
+        Assert.assertEquals(listOf(0, 1), results.indices.filter { results[it] != null })
+    }
+
+    @Test
+    fun testRevisitedPointIsTakenFromCache() {
+        val evaluator = newEvaluator(false)
+        val cache = SelectionResultCache(2)
+        evaluator.resultCache = cache
+        val stats = newStats(evaluator)
+        val first = evaluator.getSelectionResult(dataSet, Point(0.3, 0.7), stats)
+        Assert.assertSame(first, evaluator.getSelectionResult(dataSet, Point(3.0, 7.0 + 1E-9), stats))
+        Assert.assertEquals(1L, cache.hits)
+        evaluator.getSelectionResult(dataSet, Point(1.0, 0.0), stats)
+        evaluator.getSelectionResult(dataSet, Point(0.0, 1.0), stats)
+        Assert.assertEquals(2, cache.size())
+        Assert.assertNotSame(first, evaluator.getSelectionResult(dataSet, Point(0.3, 0.7), stats))
+        Assert.assertEquals(4L, stats.visitedPoints) // the cache hit is not a visit
+    }
+
+    @Test(timeout = 60000)
+    fun testAlgorithmsShareCachedResults() {
+        val evaluator = newEvaluator(false)
+        val cache = SelectionResultCache(1000)
+        evaluator.resultCache = cache
+        val config = AlgorithmConfig(1.0, evaluator, measures)
+        val first = BasicMeLiF(config, dataSet).run(arrayOf(Point(1.0, 1.0)))
+        val misses = cache.misses
+        val second = ParallelMeLiF(config, dataSet, 1).run("Parallel", arrayOf(Point(1.0, 1.0)), true)
+        Assert.assertTrue(cache.hits > 0)
+        Assert.assertEquals(misses, cache.misses) // the same descent, so every point is found in the cache
+        Assert.assertEquals(0L, second.visitedPoints)
+        Assert.assertEquals(first.bestResult.score, second.bestResult.score, 0.0)
+    }
+
+    @Test
+    fun testCacheIsBoundedBySize() {
+        val evaluator = newEvaluator(false)
+        val cache = SelectionResultCache(100, 600)
+        evaluator.resultCache = cache
+        val stats = newStats(evaluator)
+        points.forEach { evaluator.getSelectionResult(dataSet, it, stats) }
+        Assert.assertEquals(2, cache.size()) // 256 bytes each: 2 coordinates and 5 features
+        Assert.assertTrue(cache.sizeInBytes() <= 600)
+    }
+
+    @Test
+    fun testFoldScoresAreReadFromReopenedStore() {
+        val file = File.createTempFile("fold-scores", ".bin")
+        file.delete()
+        file.deleteOnExit()
+        val expected = FoldScoreStore.open(file).use { store ->
+            val evaluator = newEvaluator(false)
+            evaluator.resultCache = null
+            evaluator.scoreStore = store
+            val result = evaluator.getSelectionResult(dataSet, Point(0.3, 0.7), newStats(evaluator))
+            Assert.assertEquals(5, store.size) // one score per fold
+            result.score
+        }
+        FoldScoreStore.open(file).use { store ->
+            Assert.assertEquals(5, store.size)
+            val evaluator = newEvaluator(true)
+            evaluator.resultCache = null
+            evaluator.scoreStore = store
+            Assert.assertEquals(expected, evaluator.getSelectionResult(dataSet, Point(0.3, 0.7), newStats(evaluator)).score, 0.0)
+            Assert.assertEquals(5, store.size)
+        }
+    }
+}
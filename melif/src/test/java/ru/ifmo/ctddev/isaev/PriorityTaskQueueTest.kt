@@ -0,0 +1,37 @@
+package ru.ifmo.ctddev.isaev
+
+import org.junit.Assert
+import org.junit.Test
+import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+
+/**
+ * @author iisaev
+ */
+class PriorityTaskQueueTest {
+
+    @Test(timeout = 30000)
+    fun testPendingTasksRunMostPrioritizedFirst() {
+        val executor = Executors.newSingleThreadExecutor()
+        val queue = PriorityTaskQueue(executor)
+        val started = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        queue.submitWithPriority(Callable {
+            started.countDown()
+            release.await()
+        }, 0.0)
+        started.await()
+        val order = Collections.synchronizedList(ArrayList<Double>())
+        listOf(0.3, 0.9, 0.1, 0.5).forEach { priority ->
+            queue.submitWithPriority(Callable { order.add(priority) }, priority)
+        }
+        release.countDown()
+        queue.shutdown()
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS))
+        Assert.assertEquals(listOf(0.9, 0.5, 0.3, 0.1), order)
+    }
+}
@@ -0,0 +1,39 @@
+package ru.ifmo.ctddev.isaev
+
+import org.junit.Assert
+import org.junit.Test
+
+
+/**
+ * @author iisaev
+ */
+class ScoreKtTest {
+    private val expected = listOf(1, 1, 1, 0, 0, 0, 0, 1)
+
+    private val actual = listOf(1, 1, 0, 0, 0, 1, 0, 1)
+
+    @Test
+    fun testMetrics() {
+        val matrix = ConfusionMatrix.of(expected, actual) // TP 3, FN 1, FP 1, TN 3
+        Assert.assertEquals(0.75, F1Score().calculate(expected, actual), 1E-9)
+        Assert.assertEquals(0.75, matrix.accuracy(), 1E-9)
+        Assert.assertEquals(0.75, matrix.balancedAccuracy(), 1E-9)
+        Assert.assertEquals(0.5, matrix.mcc(), 1E-9)
+        Assert.assertEquals(Double.MIN_VALUE, F1Score().calculate(listOf(0, 0), listOf(0, 0)), 0.0)
+        Assert.assertEquals(Double.MIN_VALUE, AccuracyScore().calculate(emptyList(), emptyList()), 0.0)
+        Assert.assertEquals(Double.MIN_VALUE, BalancedAccuracyScore().calculate(listOf(0, 0), listOf(0, 1)), 0.0)
+    }
+
+    @Test
+    fun testAuc() {
+        val matrix = ConfusionMatrix()
+        val probabilities = listOf(0.9, 0.8, 0.3, 0.1, 0.2, 0.8, 0.4, 0.7)
+        expected.forEachIndexed { i, ex -> matrix.add(ex, actual[i], probabilities[i]) }
+        // 16 positive-negative pairs: 12 ordered correctly, one tie (0.8), three inverted
+        Assert.assertEquals(12.5 / 16, matrix.auc(), 1E-9)
+        Assert.assertEquals(matrix.auc(), ConfusionMatrix().add(matrix).auc(), 1E-9)
+        Assert.assertTrue(ConfusionMatrix.of(expected, actual).auc().isNaN())
+        Assert.assertEquals(matrix.auc(), AucScore().calculate(matrix), 0.0)
+        Assert.assertEquals(Double.MIN_VALUE, AucScore().calculate(expected, actual), 0.0)
+    }
+}
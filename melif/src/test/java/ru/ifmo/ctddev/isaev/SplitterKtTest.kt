@@ -0,0 +1,57 @@
+package ru.ifmo.ctddev.isaev
+
+import org.junit.Assert
+import org.junit.Test
+
+
+/**
+ * @author iisaev
+ */
+class SplitterKtTest {
+    private val classes = List(30, { if (it % 6 == 0) 1 else 0 }) // 5 instances of class 1, 25 of class 0
+
+    private val dataSet = FeatureDataSet(listOf(Feature("feature 1", classes.indices.toList())), classes, "imbalanced")
+
+    @Test
+    fun testOrderSplitterPlanMatchesSplit() {
+        val order = classes.indices.reversed().toList()
+        val splitter = OrderSplitter(20, order)
+        val plan = splitter.getFoldPlan(dataSet)
+        Assert.assertSame(plan, splitter.getFoldPlan(dataSet))
+        Assert.assertEquals(5, plan.folds.size)
+        plan.folds.forEachIndexed { i, fold ->
+            Assert.assertEquals((0 until 30).filter { it % 5 == i }.map { order[it] }, fold.testIndices.toList())
+            Assert.assertEquals(30, fold.trainIndices.size + fold.testIndices.size)
+        }
+    }
+
+    @Test
+    fun testStratifiedSplitterKeepsClassBalance() {
+        val plan = StratifiedSplitter(20, 3, 42L).getFoldPlan(dataSet)
+        Assert.assertEquals(15, plan.folds.size)
+        plan.folds.forEach { fold ->
+            Assert.assertEquals(6, fold.testIndices.size)
+            Assert.assertEquals(1, fold.testIndices.count { classes[it] == 1 })
+            Assert.assertEquals(30, (fold.trainIndices + fold.testIndices).distinct().size)
+        }
+        plan.folds.chunked(5).forEach { repeat ->
+            Assert.assertEquals(classes.indices.toList(), repeat.flatMap { it.testIndices.toList() }.sorted())
+        }
+    }
+
+    @Test
+    fun testStratifiedPlansAreSharedAndDeterministic() {
+        val first = StratifiedSplitter(20, 2, 7L).getFoldPlan(dataSet)
+        val second = StratifiedSplitter(20, 2, 7L).getFoldPlan(dataSet.take(1))
+        Assert.assertSame(first, second)
+        val other = StratifiedSplitter(20, 2, 8L).getFoldPlan(dataSet)
+        Assert.assertNotSame(first, other)
+    }
+
+    @Test
+    fun testStratifiedPlansAreBounded() {
+        val first = StratifiedSplitter(20, 1, 100L).getFoldPlan(dataSet)
+        (1..StratifiedSplitter.MAX_FOLD_PLANS).forEach { StratifiedSplitter(20, 1, 100L + it).getFoldPlan(dataSet) }
+        Assert.assertNotSame(first, StratifiedSplitter(20, 1, 100L).getFoldPlan(dataSet))
+    }
+}
@@ -0,0 +1,78 @@
+package ru.ifmo.ctddev.isaev.remote
+
+import org.junit.Assert
+import org.junit.Test
+import ru.ifmo.ctddev.isaev.*
+import ru.ifmo.ctddev.isaev.feature.measure.VDM
+import ru.ifmo.ctddev.isaev.point.Point
+import ru.ifmo.ctddev.isaev.results.RunStats
+import java.io.File
+import java.util.*
+
+
+/**
+ * @author iisaev
+ */
+class ProcessPoolTest {
+    private val random = Random(42)
+
+    private val classes = List(50, { it % 2 })
+
+    private val dataSet = FeatureDataSet(
+            (1..20).map { f -> Feature("feature $f", classes.map { it * (f % 3) + random.nextInt(4) }) },
+            classes,
+            "synthetic"
+    )
+
+    private val measures = arrayOf(VDM(), SpearmanRankCorrelation())
+
+    private fun newEvaluator() = SequentalEvaluator(Classifiers.LINEAR_SVM, PreferredSizeFilter(5),
+            OrderSplitter(20, classes.indices.toList()), F1Score())
+
+    private fun writeDataSet(): File {
+        val file = File.createTempFile("dataset", ".bin")
+        file.deleteOnExit()
+        BinaryDataSet.write(dataSet, file)
+        return file
+    }
+
+    @Test
+    fun testMappedDataSetMatchesOriginal() {
+        val mapped = BinaryDataSet.map(writeDataSet())
+        Assert.assertEquals(dataSet.name, mapped.name)
+        Assert.assertEquals(dataSet.classes, mapped.classes)
+        Assert.assertEquals(dataSet.features.map { it.name }, mapped.features.map { it.name })
+        Assert.assertEquals(dataSet.features.map { it.values }, mapped.features.map { it.values })
+        val feature = mapped.features[0]
+        Assert.assertArrayEquals(dataSet.features[0].column, feature.column)
+        Assert.assertNotSame(feature.column, feature.column) // mapped columns are not copied to the heap for good
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testUnknownScoreIsRejected() {
+        ProcessPool(writeDataSet(), 1, Classifiers.LINEAR_SVM, object : Score {
+            override fun calculate(matrix: ConfusionMatrix): Double = 0.0
+        })
+    }
+
+    @Test
+    fun testReceivedFoldsAreInterned() {
+        val fold = ForkedFoldWorker.internFold(intArrayOf(0, 2, 4), intArrayOf(1, 3))
+        Assert.assertSame(fold, ForkedFoldWorker.internFold(intArrayOf(0, 2, 4), intArrayOf(1, 3)))
+        Assert.assertNotSame(fold, ForkedFoldWorker.internFold(intArrayOf(0, 2, 4), intArrayOf(1, 5)))
+    }
+
+    @Test(timeout = 60000)
+    fun testForkedFoldsMatchLocal() {
+        val local = newEvaluator()
+        val forked = newEvaluator()
+        ProcessPool(writeDataSet(), 2, Classifiers.LINEAR_SVM, F1Score()).use { pool ->
+            forked.processPool = pool
+            listOf(Point(1.0, 0.0), Point(0.3, 0.7)).forEach {
+                val expected = local.getSelectionResult(dataSet, it, RunStats(AlgorithmConfig(0.1, local, measures), dataSet, "local"))
+                val actual = forked.getSelectionResult(dataSet, it, RunStats(AlgorithmConfig(0.1, forked, measures), dataSet, "forked"))
+                Assert.assertEquals(expected.score, actual.score, 0.0)
+            }
+        }
+    }
+}
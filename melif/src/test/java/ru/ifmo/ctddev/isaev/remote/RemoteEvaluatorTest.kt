@@ -0,0 +1,147 @@
+package ru.ifmo.ctddev.isaev.remote
+
+import org.junit.Assert
+import org.junit.Test
+import ru.ifmo.ctddev.isaev.*
+import ru.ifmo.ctddev.isaev.feature.measure.SymmetricUncertainty
+import ru.ifmo.ctddev.isaev.feature.measure.VDM
+import ru.ifmo.ctddev.isaev.point.Point
+import ru.ifmo.ctddev.isaev.results.RunStats
+import java.io.DataOutputStream
+import java.net.InetSocketAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.util.*
+
+
+/**
+ * @author iisaev
+ */
+class RemoteEvaluatorTest {
+    private val random = Random(42)
+
+    private val classes = List(50, { it % 2 })
+
+    private val dataSet = FeatureDataSet(
+            (1..20).map { f -> Feature("feature $f", classes.map { it * (f % 3) + random.nextInt(4) }) },
+            classes,
+            "synthetic"
+    )
+
+    private val measures = arrayOf(VDM(), SpearmanRankCorrelation())
+
+    private val filter = PreferredSizeFilter(5)
+
+    private val splitter = OrderSplitter(20, classes.indices.toList())
+
+    private fun newConfig(evaluator: FoldsEvaluator) = AlgorithmConfig(0.1, evaluator, measures)
+
+    private fun startWorker(): ServerSocket {
+        val evaluator = SequentalEvaluator(Classifiers.LINEAR_SVM, filter, splitter, F1Score())
+        return EvaluationWorker(newConfig(evaluator), dataSet).listen(0)
+    }
+
+    @Test(timeout = 30000)
+    fun testRemoteScoresMatchLocal() {
+        val local = SequentalEvaluator(Classifiers.LINEAR_SVM, filter, splitter, F1Score())
+        val workers = listOf(startWorker(), startWorker())
+        val remote = RemoteEvaluator(workers.map { InetSocketAddress("localhost", it.localPort) }, 2, 3,
+                Classifiers.LINEAR_SVM, filter, splitter, F1Score())
+        remote.use {
+            val points = listOf(Point(1.0, 0.0), Point(0.0, 1.0), Point(0.3, 0.7))
+            val localStats = RunStats(newConfig(local), dataSet, "local")
+            val remoteStats = RunStats(newConfig(remote), dataSet, "remote")
+            points.forEach {
+                val expected = local.getSelectionResult(dataSet, it, localStats)
+                val actual = remote.evaluateAsync(dataSet, it, remoteStats).join()
+                Assert.assertEquals(expected.score, actual.score, 0.0)
+                Assert.assertEquals(expected.selectedFeatures.map { it.name }, actual.selectedFeatures.map { it.name })
+            }
+        }
+        workers.forEach { it.close() }
+    }
+
+    @Test(timeout = 30000)
+    fun testRequestedMeasuresAreUsed() {
+        val local = SequentalEvaluator(Classifiers.LINEAR_SVM, filter, splitter, F1Score())
+        val worker = startWorker()
+        val remote = RemoteEvaluator(listOf(InetSocketAddress("localhost", worker.localPort)), 1, 1,
+                Classifiers.LINEAR_SVM, filter, splitter, F1Score())
+        remote.use {
+            val subset = arrayOf(measures[1])
+            val expected = local.getSelectionResult(dataSet, Point(1.0), RunStats(newConfig(local), dataSet, "local"), subset)
+            val actual = remote.getSelectionResult(dataSet, Point(1.0), RunStats(newConfig(remote), dataSet, "remote"), subset)
+            Assert.assertEquals(expected.selectedFeatures.map { it.name }, actual.selectedFeatures.map { it.name })
+            try {
+                remote.getSelectionResult(dataSet, Point(1.0), RunStats(newConfig(remote), dataSet, "remote"),
+                        arrayOf(SymmetricUncertainty()))
+                Assert.fail("Measure missing on the worker should be rejected")
+            } catch (e: IllegalStateException) {
+                Assert.assertTrue(e.message!!.contains("is not configured"))
+            }
+        }
+        worker.close()
+    }
+
+    @Test(timeout = 30000)
+    fun testPrunedResultIsReportedPerRun() {
+        val racing = SequentalEvaluator(Classifiers.LINEAR_SVM, filter, splitter, F1Score())
+        racing.racing = true
+        val worker = EvaluationWorker(newConfig(racing), dataSet).listen(0)
+        val remote = RemoteEvaluator(listOf(InetSocketAddress("localhost", worker.localPort)), 1, 1,
+                Classifiers.LINEAR_SVM, filter, splitter, F1Score())
+        remote.use {
+            val point = Point(1.0, 1.0)
+            val hopeless = RunStats(newConfig(remote), dataSet, "hopeless")
+            hopeless.offerBestResult(SelectionResult(emptyList(), point, 1.0))
+            Assert.assertTrue(remote.getSelectionResult(dataSet, point, hopeless).isPruned)
+            Assert.assertEquals(1L, hopeless.prunedPoints)
+
+            val fresh = RunStats(newConfig(remote), dataSet, "fresh")
+            val expected = racing.getSelectionResult(dataSet, point, RunStats(newConfig(racing), dataSet, "local"))
+            val actual = remote.getSelectionResult(dataSet, point, fresh)
+            Assert.assertFalse(actual.isPruned)
+            Assert.assertEquals(expected.score, actual.score, 0.0)
+            Assert.assertSame(actual, fresh.bestResult)
+        }
+        worker.close()
+    }
+
+    @Test(timeout = 30000)
+    fun testHungWorkerIsRetriedAfterTimeout() {
+        val hung = ServerSocket(0)
+        val accepted = ArrayList<Socket>()
+        val acceptor = Thread {
+            val socket = hung.accept() // greets and never answers
+            accepted.add(socket)
+            RemoteProtocol.writeHello(DataOutputStream(socket.getOutputStream()), dataSet.getFeatureCount(), dataSet.getInstanceCount())
+        }
+        acceptor.isDaemon = true
+        acceptor.start()
+        val alive = startWorker()
+        val remote = RemoteEvaluator(listOf(InetSocketAddress("localhost", hung.localPort), InetSocketAddress("localhost", alive.localPort)),
+                1, 2, Classifiers.LINEAR_SVM, filter, splitter, F1Score())
+        remote.readTimeout = 500
+        remote.use {
+            val stats = RunStats(newConfig(remote), dataSet, "remote")
+            Assert.assertFalse(remote.evaluateAsync(dataSet, Point(1.0, 1.0), stats).join().isPruned)
+        }
+        alive.close()
+        hung.close()
+    }
+
+    @Test(timeout = 30000)
+    fun testPointIsRetriedOnAnotherWorker() {
+        val alive = startWorker()
+        val dead = ServerSocket(0)
+        dead.close() // nobody listens on this port
+        val remote = RemoteEvaluator(listOf(InetSocketAddress("localhost", dead.localPort), InetSocketAddress("localhost", alive.localPort)),
+                1, 2, Classifiers.LINEAR_SVM, filter, splitter, F1Score())
+        remote.use {
+            val stats = RunStats(newConfig(remote), dataSet, "remote")
+            remote.getSelectionResult(dataSet, Point(1.0, 1.0), stats)
+            Assert.assertEquals(1L, stats.visitedPoints)
+        }
+        alive.close()
+    }
+}
@@ -1,6 +1,8 @@
 package ru.ifmo.ctddev.isaev.space
 
+import org.junit.Assert
 import org.junit.Test
+import ru.ifmo.ctddev.isaev.point.Point
 import java.lang.Math.PI
 import java.lang.Math.abs
 import java.util.*
@@ -20,6 +22,21 @@ class UtilKtTest {
         assertArrayEquals(doubleArrayOf(0.0, 1.0, 0.0), getPointOnUnitSphere(doubleArrayOf(PI / 2, PI / 2)).coordinates)
     }
 
+    @Test
+    fun testBatchEvaluationMatchesSinglePoint() {
+        val random = Random(42)
+        val featureCount = 3 * BatchPointEvaluator.FEATURE_BLOCK_SIZE + 7
+        val dataSet = (0 until 3).map { DoubleArray(featureCount, { random.nextDouble() }) }
+        val points = (0 until 20).map { Point(random.nextDouble(), random.nextDouble(), random.nextDouble()) }
+        val evaluator = BatchPointEvaluator(dataSet)
+        val evaluated = evaluator.evaluate(points)
+        val cuts = evaluator.evaluateCuts(points, 50)
+        points.forEachIndexed { i, point ->
+            Assert.assertArrayEquals(evaluatePoint(point, dataSet), evaluated[i], 0.0)
+            Assert.assertEquals(processPointGetWholeCut(point, dataSet, 50), cuts[i].toList())
+        }
+    }
+
     private fun assertArrayEquals(expected: DoubleArray, actual: DoubleArray) {
         if (!expected.indices.all { abs(expected[it] - actual[it]) < EPSILON }) {
             throw AssertionError("\nExpected: ${Arrays.toString(expected)}\nActual: $${Arrays.toString(actual)}")